@@ -0,0 +1,192 @@
+package com.claygregory.jfitbit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Summary statistics over intraday activity series. Series are first extracted
+ * from the activity models into primitive arrays; the statistics themselves are
+ * simple counted loops over those arrays, leaving the JIT free to unroll and
+ * vectorize them.
+ *
+ * <p>Batches covering many users can be computed in parallel with
+ * {@link #computeAll(List, Statistic, ExecutorService)}.</p>
+ *
+ * @author Clay Gregory
+ *
+ */
+public class ActivityAnalytics {
+
+	/**
+	 * A statistic computed over a single series
+	 */
+	public static interface Statistic<R> {
+
+		R compute( int[] values );
+
+	}
+
+	/**
+	 * Computes statistic over each series in parallel
+	 *
+	 * @param series primitive series, typically one per user
+	 * @param statistic to compute
+	 * @param executor running the computations
+	 * @return results in the same order as series
+	 */
+	public static <R> List<R> computeAll( List<int[]> series, final Statistic<R> statistic, ExecutorService executor ) {
+
+		List<Future<R>> futures = new ArrayList<Future<R>>( series.size( ) );
+		for ( final int[] values : series ) {
+			futures.add( executor.submit( new Callable<R>( ) {
+				public R call( ) {
+					return statistic.compute( values );
+				}
+			} ) );
+		}
+
+		List<R> results = new ArrayList<R>( futures.size( ) );
+		try {
+			for ( Future<R> future : futures )
+				results.add( future.get( ) );
+		} catch( ExecutionException e ) {
+			throw new FitbitExecutionException( e.getCause( ) );
+		} catch( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			throw new FitbitExecutionException( e );
+		} finally {
+			for ( Future<R> future : futures )
+				future.cancel( true );
+		}
+
+		return results;
+	}
+
+	/**
+	 * Counts intervals at or above threshold, such as active intervals in a step series.
+	 * Multiply by interval size for active minutes.
+	 *
+	 * @param values series
+	 * @param threshold minimum value counted as active
+	 * @return number of intervals at or above threshold
+	 */
+	public static int countActive( int[] values, int threshold ) {
+		int count = 0;
+		for ( int i = 0; i < values.length; i++ )
+			count += values[ i ] >= threshold ? 1 : 0;
+		return count;
+	}
+
+	/**
+	 * Extracts activity level codes from calorie burns
+	 *
+	 * @param burns calorie series
+	 * @return {@link ActivityLevel} ordinal per interval
+	 */
+	public static int[] levelCodes( List<CalorieBurn> burns ) {
+		int[] codes = new int[ burns.size( ) ];
+		for ( int i = 0; i < codes.length; i++ )
+			codes[ i ] = burns.get( i ).getLevel( ).ordinal( );
+		return codes;
+	}
+
+	/**
+	 * Trailing moving average
+	 *
+	 * @param values series
+	 * @param window number of intervals averaged
+	 * @return averages, where element i covers values i through i + window - 1
+	 */
+	public static double[] movingAverage( int[] values, int window ) {
+
+		if ( window <= 0 )
+			throw new IllegalArgumentException( "window must be positive" );
+
+		if ( values.length < window )
+			return new double[ 0 ];
+
+		double[] result = new double[ values.length - window + 1 ];
+		long sum = 0;
+		for ( int i = 0; i < window; i++ )
+			sum += values[ i ];
+
+		result[ 0 ] = (double) sum / window;
+		for ( int i = window; i < values.length; i++ ) {
+			sum += values[ i ] - values[ i - window ];
+			result[ i - window + 1 ] = (double) sum / window;
+		}
+		return result;
+	}
+
+	/**
+	 * Nearest-rank percentile
+	 *
+	 * @param values series, not modified
+	 * @param percentile between 0 and 100
+	 * @return value at percentile, 0 for an empty series
+	 */
+	public static int percentile( int[] values, double percentile ) {
+
+		if ( percentile < 0 || percentile > 100 )
+			throw new IllegalArgumentException( "percentile must be between 0 and 100" );
+
+		if ( values.length == 0 )
+			return 0;
+
+		int[] sorted = values.clone( );
+		Arrays.sort( sorted );
+		int rank = (int) Math.ceil( percentile / 100 * sorted.length );
+		return sorted[ Math.max( rank - 1, 0 ) ];
+	}
+
+	public static long sum( int[] values ) {
+		long sum = 0;
+		for ( int i = 0; i < values.length; i++ )
+			sum += values[ i ];
+		return sum;
+	}
+
+	/**
+	 * Totals values by level, such as calories burned by activity level
+	 *
+	 * @param values series
+	 * @param codes level code per interval, see {@link #levelCodes(List)}
+	 * @param levelCount number of distinct levels, such as {@code ActivityLevel.values( ).length}
+	 * @return total per level; intervals with a code outside range are skipped
+	 */
+	public static long[] sumByLevel( int[] values, int[] codes, int levelCount ) {
+
+		if ( values.length != codes.length )
+			throw new IllegalArgumentException( "values and codes must be the same length" );
+
+		long[] totals = new long[ levelCount ];
+		for ( int i = 0; i < values.length; i++ ) {
+			int code = codes[ i ];
+			if ( code >= 0 && code < levelCount )
+				totals[ code ] += values[ i ];
+		}
+		return totals;
+	}
+
+	/**
+	 * Extracts values from an activity series, treating missing values as 0
+	 *
+	 * @param series of activity values
+	 * @return primitive values in series order
+	 */
+	public static int[] values( List<? extends ActivityValue<Integer>> series ) {
+		int[] values = new int[ series.size( ) ];
+		for ( int i = 0; i < values.length; i++ ) {
+			Integer value = series.get( i ).getValue( );
+			values[ i ] = value != null ? value : 0;
+		}
+		return values;
+	}
+
+	protected ActivityAnalytics( ) { }
+}
@@ -0,0 +1,66 @@
+package com.claygregory.jfitbit;
+
+
+/**
+ * Activity level reported alongside calories burned
+ * 
+ * @author Clay Gregory
+ *
+ */
+public enum ActivityLevel {
+	
+	SEDENTARY( "sedentary" ), LIGHTLY_ACTIVE( "lightly" ), FAIRLY_ACTIVE( "moderately" ), VERY_ACTIVE( "very" ), UNKNOWN( null );
+	
+	private final String reportedName;
+	
+	private ActivityLevel( String reportedName ) {
+		this.reportedName = reportedName;
+	}
+	
+	/**
+	 * @return level name as reported by Fitbit, such as "lightly", or null for {@link #UNKNOWN}
+	 */
+	public String getReportedName( ) {
+		return this.reportedName;
+	}
+	
+	/**
+	 * Parses an activity level as reported by Fitbit. Fitbit's short names ("sedentary",
+	 * "lightly", "fairly" or "moderately", "very") and the constant names of this enum
+	 * are accepted, ignoring case.
+	 * 
+	 * @param level as reported, may be null
+	 * @return matching ActivityLevel, or {@link #UNKNOWN} if not recognized
+	 */
+	public static ActivityLevel parse( String level ) {
+		
+		if ( level == null )
+			return UNKNOWN;
+		
+		//length narrows the candidates to one name before comparing
+		switch ( level.length( ) ) {
+			case 4:
+				return match( level, "very", VERY_ACTIVE );
+			case 6:
+				return match( level, "fairly", FAIRLY_ACTIVE );
+			case 7:
+				return match( level, "lightly", LIGHTLY_ACTIVE );
+			case 9:
+				return match( level, "sedentary", SEDENTARY );
+			case 10:
+				return match( level, "moderately", FAIRLY_ACTIVE );
+			case 11:
+				return match( level, "very_active", VERY_ACTIVE );
+			case 13:
+				return match( level, "fairly_active", FAIRLY_ACTIVE );
+			case 14:
+				return match( level, "lightly_active", LIGHTLY_ACTIVE );
+			default:
+				return UNKNOWN;
+		}
+	}
+	
+	private static ActivityLevel match( String level, String name, ActivityLevel candidate ) {
+		return level.equalsIgnoreCase( name ) ? candidate : UNKNOWN;
+	}
+}
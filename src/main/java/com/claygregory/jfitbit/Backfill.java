@@ -0,0 +1,480 @@
+package com.claygregory.jfitbit;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+import com.claygregory.jfitbit.IntradayStore.Series;
+import com.claygregory.jfitbit.RequestScheduler.Priority;
+
+/**
+ * Command-line tool downloading account history into an {@link IntradayStore}. Each
+ * (account, series, day) is checkpointed as it is written, so an interrupted run resumes
+ * where it stopped when started again with the same output directory. Days without weight
+ * measurements are not stored, and are instead checkpointed in a manifest alongside the store.
+ *
+ * <pre>
+ * java -jar jfitbit.jar
+ *     --account email:password | --accounts file
+ *     --from yyyy-MM-dd [--to yyyy-MM-dd]
+ *     [--series steps,floors,calories,sleep,weight] [--threads 4]
+ *     --out directory
+ * </pre>
+ *
+ * <p>Accounts files hold one email:password per line. The range ends yesterday unless
+ * specified, and is never allowed past yesterday, since days are not revisited once
+ * checkpointed.</p>
+ *
+ * @author Clay Gregory
+ *
+ */
+public class Backfill {
+
+	private abstract class Task implements Runnable {
+
+		private final String description;
+
+		private final int days;
+
+		private Task( String description, int days ) {
+			this.description = description;
+			this.days = days;
+		}
+
+		public void run( ) {
+			for ( int attempt = 1; ; attempt++ ) {
+				try {
+					this.execute( );
+					completed.addAndGet( this.days );
+					return;
+				} catch( RuntimeException e ) {
+					if ( attempt >= MAX_ATTEMPTS ) {
+						failed.addAndGet( this.days );
+						System.err.println( "Failed " + this.description + ": " + e );
+						return;
+					}
+				}
+
+				try {
+					Thread.sleep( attempt * RETRY_DELAY_MILLIS );
+				} catch( InterruptedException e ) {
+					Thread.currentThread( ).interrupt( );
+					return;
+				}
+			}
+		}
+
+		protected abstract void execute( );
+	}
+
+	private static final int DEFAULT_THREADS = 4;
+
+	private static final String MANIFEST = "backfill.manifest";
+
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static final long REPORT_INTERVAL_MILLIS = 5000;
+
+	private static final long RETRY_DELAY_MILLIS = 2000;
+
+	public static void main( String[] args ) {
+
+		Backfill backfill;
+		try {
+			backfill = parse( args );
+		} catch( IllegalArgumentException e ) {
+			System.err.println( e.getMessage( ) );
+			System.err.println( "Usage: Backfill (--account email:password | --accounts file) --from yyyy-MM-dd [--to yyyy-MM-dd]" );
+			System.err.println( "           [--series steps,floors,calories,sleep,weight] [--threads n] --out directory" );
+			System.exit( 2 );
+			return;
+		}
+
+		System.exit( backfill.run( ) > 0 ? 1 : 0 );
+	}
+
+	protected static Backfill parse( String[] args ) {
+
+		Backfill backfill = new Backfill( );
+		for ( int i = 0; i < args.length; i++ ) {
+
+			String option = args[ i ];
+			if ( i + 1 >= args.length )
+				throw new IllegalArgumentException( "Missing value for " + option );
+			String value = args[ ++i ];
+
+			try {
+				if ( option.equals( "--account" ) ) {
+					backfill.accounts.add( parseAccount( value ) );
+				} else if ( option.equals( "--accounts" ) ) {
+					backfill.accounts.addAll( readAccounts( new File( value ) ) );
+				} else if ( option.equals( "--from" ) ) {
+					backfill.from = LocalDate.parse( value );
+				} else if ( option.equals( "--to" ) ) {
+					backfill.to = LocalDate.parse( value );
+				} else if ( option.equals( "--series" ) ) {
+					backfill.series.clear( );
+					for ( String name : value.split( "," ) )
+						backfill.series.add( parseSeries( name.trim( ) ) );
+				} else if ( option.equals( "--threads" ) ) {
+					backfill.threads = Integer.parseInt( value );
+				} else if ( option.equals( "--out" ) ) {
+					backfill.out = new File( value );
+				} else {
+					throw new IllegalArgumentException( "Unknown option " + option );
+				}
+			} catch( IOException e ) {
+				throw new IllegalArgumentException( "Unable to read " + value + ": " + e.getMessage( ) );
+			}
+		}
+
+		if ( backfill.accounts.isEmpty( ) )
+			throw new IllegalArgumentException( "No accounts specified" );
+		if ( backfill.from == null )
+			throw new IllegalArgumentException( "No start date specified" );
+		if ( backfill.out == null )
+			throw new IllegalArgumentException( "No output directory specified" );
+		if ( backfill.threads <= 0 )
+			throw new IllegalArgumentException( "Threads must be positive" );
+
+		//today is still accumulating, and a partial day would be checkpointed as complete
+		LocalDate yesterday = LocalDate.now( ).minusDays( 1 );
+		if ( backfill.to.isAfter( yesterday ) ) {
+			System.err.println( "Ending range at " + yesterday + ", days through today are incomplete" );
+			backfill.to = yesterday;
+		}
+		if ( backfill.to.isBefore( backfill.from ) )
+			throw new IllegalArgumentException( "End date precedes start date" );
+
+		return backfill;
+	}
+
+	private static String[] parseAccount( String account ) {
+		int separator = account.indexOf( ':' );
+		if ( separator <= 0 )
+			throw new IllegalArgumentException( "Accounts must be given as email:password" );
+		return new String[] { account.substring( 0, separator ), account.substring( separator + 1 ) };
+	}
+
+	private static Series parseSeries( String name ) {
+		if ( name.equals( "steps" ) )
+			return Series.STEPS;
+		if ( name.equals( "floors" ) )
+			return Series.FLOORS;
+		if ( name.equals( "calories" ) )
+			return Series.CALORIES;
+		if ( name.equals( "sleep" ) )
+			return Series.SLEEP;
+		if ( name.equals( "weight" ) )
+			return Series.WEIGHT;
+		throw new IllegalArgumentException( "Unknown series " + name );
+	}
+
+	private static List<String[]> readAccounts( File file ) throws IOException {
+
+		List<String[]> accounts = new ArrayList<String[]>( );
+		BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+		try {
+			String line;
+			while ( ( line = reader.readLine( ) ) != null ) {
+				line = line.trim( );
+				if ( line.length( ) > 0 && !line.startsWith( "#" ) )
+					accounts.add( parseAccount( line ) );
+			}
+		} finally {
+			reader.close( );
+		}
+		return accounts;
+	}
+
+	private final List<String[]> accounts = new ArrayList<String[]>( );
+
+	private final AtomicInteger completed = new AtomicInteger( );
+
+	private final AtomicInteger failed = new AtomicInteger( );
+
+	private LocalDate from;
+
+	private final Set<String> manifest = new HashSet<String>( );
+
+	private Writer manifestWriter;
+
+	private File out;
+
+	private final Set<Series> series = EnumSet.allOf( Series.class );
+
+	private IntradayStore store;
+
+	private int threads = DEFAULT_THREADS;
+
+	private LocalDate to = LocalDate.now( ).minusDays( 1 );
+
+	private int total;
+
+	protected Backfill( ) {
+
+	}
+
+	/**
+	 * Fetches all days not yet checkpointed
+	 *
+	 * @return number of series-days that failed
+	 */
+	public int run( ) {
+
+		this.store = new IntradayStore( this.out );
+		try {
+			this.openManifest( );
+		} catch( IOException e ) {
+			System.err.println( "Unable to open manifest: " + e );
+			return 1;
+		}
+
+		//sign-ins are the only interactive requests; each worker holds at most one backfill slot, so none is shed
+		RequestScheduler scheduler = new RequestScheduler(
+			1,
+			this.threads,
+			this.threads,
+			RequestScheduler.DEFAULT_BACKFILL_DEADLINE_MILLIS
+		);
+
+		int accountDays = ( Days.daysBetween( this.from, this.to ).getDays( ) + 1 ) * this.series.size( );
+		List<Task> tasks = new ArrayList<Task>( );
+		int skipped = 0;
+		for ( String[] account : this.accounts ) {
+
+			Fitbit fitbit;
+			try {
+				fitbit = new Fitbit( account[ 0 ], account[ 1 ], scheduler ).withPriority( Priority.BACKFILL );
+			} catch( FitbitAuthenticationException e ) {
+				System.err.println( "Unable to authenticate " + account[ 0 ] );
+				this.failAccount( accountDays );
+				continue;
+			} catch( FitbitExecutionException e ) {
+				System.err.println( "Unable to authenticate " + account[ 0 ] + ": " + e );
+				this.failAccount( accountDays );
+				continue;
+			}
+
+			for ( Series s : this.series ) {
+				List<LocalDate> missing = new ArrayList<LocalDate>( );
+				for ( LocalDate date = this.from; !date.isAfter( this.to ); date = date.plusDays( 1 ) ) {
+					if ( this.isCheckpointed( fitbit.getUserId( ), s, date ) )
+						skipped++;
+					else
+						missing.add( date );
+				}
+
+				if ( s == Series.WEIGHT )
+					this.addWeightTasks( fitbit, missing, tasks );
+				else
+					for ( LocalDate date : missing )
+						tasks.add( this.createTask( fitbit, s, date ) );
+			}
+		}
+
+		for ( Task task : tasks )
+			this.total += task.days;
+
+		System.err.println( String.format( "%d series-days to fetch, %d already checkpointed, %d unable to authenticate", this.total, skipped, this.failed.get( ) ) );
+
+		final long start = System.currentTimeMillis( );
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor( );
+		reporter.scheduleAtFixedRate( new Runnable( ) {
+			public void run( ) {
+				report( start );
+			}
+		}, REPORT_INTERVAL_MILLIS, REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS );
+
+		ExecutorService executor = Executors.newFixedThreadPool( this.threads );
+		for ( Task task : tasks )
+			executor.execute( task );
+		executor.shutdown( );
+
+		try {
+			while ( !executor.awaitTermination( 1, TimeUnit.MINUTES ) ) {
+				//keep waiting
+			}
+		} catch( InterruptedException e ) {
+			executor.shutdownNow( );
+			Thread.currentThread( ).interrupt( );
+		} finally {
+			reporter.shutdownNow( );
+			this.closeManifest( );
+		}
+
+		this.report( start );
+		return this.failed.get( );
+	}
+
+	/**
+	 * Counts every series-day of an account that could not authenticate as failed, so
+	 * totals stay in series-days
+	 */
+	private void failAccount( int days ) {
+		this.total += days;
+		this.failed.addAndGet( days );
+	}
+
+	protected void report( long start ) {
+
+		int done = this.completed.get( );
+		double seconds = Math.max( System.currentTimeMillis( ) - start, 1 ) / 1000.0;
+		double rate = done / seconds;
+		int remaining = this.total - done - this.failed.get( );
+
+		System.err.println( String.format(
+			"%d/%d series-days, %d failed, %.1f/s, %s remaining",
+			done, this.total, this.failed.get( ), rate,
+			rate > 0 ? ( (long) ( remaining / rate ) ) + "s" : "unknown"
+		) );
+	}
+
+	private void addWeightTasks( final Fitbit fitbit, List<LocalDate> missing, List<Task> tasks ) {
+
+		//weights are fetched a month of missing days at a time and checkpointed per day
+		Map<LocalDate,List<LocalDate>> months = new LinkedHashMap<LocalDate,List<LocalDate>>( );
+		for ( LocalDate date : missing ) {
+			LocalDate month = date.withDayOfMonth( 1 );
+			if ( !months.containsKey( month ) )
+				months.put( month, new ArrayList<LocalDate>( ) );
+			months.get( month ).add( date );
+		}
+
+		for ( LocalDate month : months.keySet( ) ) {
+			final List<LocalDate> days = months.get( month );
+			tasks.add( new Task( fitbit.getUserId( ) + " weight " + month.toString( "yyyy-MM" ), days.size( ) ) {
+				@Override
+				protected void execute( ) {
+
+					Map<LocalDate,List<Weight>> byDay = new HashMap<LocalDate,List<Weight>>( );
+					for ( LocalDate day : days )
+						byDay.put( day, new ArrayList<Weight>( ) );
+
+					for ( Weight w : fitbit.getWeights( days.get( 0 ), days.get( days.size( ) - 1 ) ) ) {
+						List<Weight> dayWeights = byDay.get( w.getDateTime( ).toLocalDate( ) );
+						if ( dayWeights != null )
+							dayWeights.add( w );
+					}
+
+					for ( LocalDate day : days ) {
+						if ( byDay.get( day ).isEmpty( ) )
+							checkpoint( fitbit.getUserId( ), Series.WEIGHT, day );
+						else
+							store.putWeights( fitbit.getUserId( ), day, byDay.get( day ) );
+					}
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Records a day stored without a segment, such as a day without weight measurements
+	 */
+	protected synchronized void checkpoint( String userId, Series series, LocalDate date ) {
+		String entry = manifestEntry( userId, series, date );
+		try {
+			this.manifestWriter.write( entry + "\n" );
+			this.manifestWriter.flush( );
+		} catch( IOException e ) {
+			throw new FitbitExecutionException( e );
+		}
+		this.manifest.add( entry );
+	}
+
+	protected synchronized boolean isCheckpointed( String userId, Series series, LocalDate date ) {
+		return this.manifest.contains( manifestEntry( userId, series, date ) ) || this.store.contains( userId, series, date );
+	}
+
+	private synchronized void closeManifest( ) {
+		try {
+			this.manifestWriter.close( );
+		} catch( IOException e ) {
+			System.err.println( "Unable to close manifest: " + e );
+		}
+	}
+
+	private synchronized void openManifest( ) throws IOException {
+
+		File file = new File( this.out, MANIFEST );
+		boolean terminated = true;
+		if ( file.isFile( ) ) {
+			BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( file ), "UTF-8" ) );
+			try {
+				String line;
+				while ( ( line = reader.readLine( ) ) != null )
+					this.manifest.add( line );
+			} finally {
+				reader.close( );
+			}
+
+			RandomAccessFile raf = new RandomAccessFile( file, "r" );
+			try {
+				if ( raf.length( ) > 0 ) {
+					raf.seek( raf.length( ) - 1 );
+					terminated = raf.read( ) == '\n';
+				}
+			} finally {
+				raf.close( );
+			}
+		}
+
+		this.manifestWriter = new OutputStreamWriter( new FileOutputStream( file, true ), "UTF-8" );
+
+		//an interrupted run may have left a partial entry, which never matches and is ended here
+		if ( !terminated )
+			this.manifestWriter.write( "\n" );
+	}
+
+	private static String manifestEntry( String userId, Series series, LocalDate date ) {
+		return userId + " " + series.name( ).toLowerCase( ) + " " + date;
+	}
+
+	private Task createTask( final Fitbit fitbit, final Series series, final LocalDate date ) {
+
+		return new Task( fitbit.getUserId( ) + " " + series.name( ).toLowerCase( ) + " " + date, 1 ) {
+			@Override
+			protected void execute( ) {
+				String userId = fitbit.getUserId( );
+				switch ( series ) {
+					case CALORIES:
+						store.putCaloriesBurned( userId, date, fitbit.getCaloriesBurned( date ) );
+						break;
+					case FLOORS:
+						store.putFloorCount( userId, date, fitbit.getFloorCount( date ) );
+						break;
+					case SLEEP:
+						store.putSleepSessions( userId, date, fitbit.getSleepSessions( date ) );
+						break;
+					case STEPS:
+						store.putStepCount( userId, date, fitbit.getStepCount( date ) );
+						break;
+					default:
+						throw new IllegalArgumentException( "Unsupported series " + series );
+				}
+			}
+		};
+	}
+}
@@ -9,13 +9,27 @@ package com.claygregory.jfitbit;
  */
 public class CalorieBurn extends ActivityValue<Integer> {
 
-	private String activityLevel;
-		
+	private ActivityLevel level = ActivityLevel.UNKNOWN;
+	
+	//held only when the reported value differs from the level's reported name
+	private String unrecognizedLevel;
+	
+	/**
+	 * @return activity level as reported by Fitbit, such as "sedentary"
+	 */
 	public String getActivityLevel( ) {
-		return activityLevel;
+		return this.unrecognizedLevel != null ? this.unrecognizedLevel : this.level.getReportedName( );
+	}
+	
+	/**
+	 * @return activity level parsed from {@link #getActivityLevel()}, {@link ActivityLevel#UNKNOWN} if not recognized
+	 */
+	public ActivityLevel getLevel( ) {
+		return this.level;
 	}
 
 	public void setActivityLevel( String activityLevel ) {
-		this.activityLevel = activityLevel;
+		this.level = ActivityLevel.parse( activityLevel );
+		this.unrecognizedLevel = activityLevel == null || activityLevel.equals( this.level.getReportedName( ) ) ? null : activityLevel;
 	}
 }
@@ -1,15 +1,18 @@
 package com.claygregory.jfitbit;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.http.HttpRequest;
@@ -27,7 +30,6 @@ import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 import org.joda.time.LocalDate;
@@ -35,11 +37,13 @@ import org.joda.time.Minutes;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import com.claygregory.jfitbit.RequestScheduler.Priority;
 import com.claygregory.jfitbit.SleepSession.SleepLevel;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 /**
  * 
@@ -57,51 +61,106 @@ public class Fitbit {
 	protected static abstract class ActivityResponseHandler extends ResponseHandler {
 		
 		/**
-		* Receives activity data points from response
+		* Receives activity data points from response. Prefer overriding
+		* {@link #processDataPoint(Interval, double, String)}, which is passed fields
+		* streamed from the response rather than a JSON tree.
 		* 
 		* @param interval parsed from description
-		* @param dataPoint JSON data point at interval
+		* @param dataPoint JSON data point at interval, holding dateTime, value and activityLevel
+		* @deprecated rebuilds a JsonObject per data point
 		*/
+		@Deprecated
 		protected void processDataPoint( Interval interval, JsonObject dataPoint ) {
 		//optional to implement, default noop
 		}
 		
-		protected void processResponse( String json ) {
-			
-			JsonParser parser = new JsonParser( );
+		/**
+		* Receives activity data points from response. By default rebuilds the data point
+		* and passes it to {@link #processDataPoint(Interval, JsonObject)}, so handlers
+		* overriding that still receive every point.
+		* 
+		* @param interval parsed from description
+		* @param value of data point
+		* @param activityLevel of data point, null if not present
+		*/
+		protected void processDataPoint( Interval interval, double value, String activityLevel ) {
+			JsonObject dataPoint = new JsonObject( );
+			dataPoint.addProperty( "dateTime", DATE_TIME_FORMAT.print( interval.getStart( ) ) );
+			dataPoint.addProperty( "value", value );
+			if ( activityLevel != null )
+				dataPoint.addProperty( "activityLevel", activityLevel );
+			this.processDataPoint( interval, dataPoint );
+		}
+		
+		protected void processResponse( Reader json ) throws IOException {
 			
-			JsonArray dataPoints = parser.parse( json ).getAsJsonObject( )
-				.get( "graph" ).getAsJsonObject( )
-				.get( "dataSets" ).getAsJsonObject( )
-				.get( "activity" ).getAsJsonObject( )
-				.get( "dataPoints" ).getAsJsonArray( );
+			//interval size is derived from all timestamps, so points are held until the array ends
+			List<DateTime> dateTimes = new ArrayList<DateTime>( );
+			List<String> activityLevels = new ArrayList<String>( );
+			Map<String,String> levelNames = new HashMap<String,String>( );
+			double[] values = new double[ 64 ];
 			
-			int intervalSize = computeIntervalSize( dataPoints );
-
-			for ( JsonElement dataPoint : dataPoints ) {
+			JsonReader reader = new JsonReader( json );
+			seekDataPoints( reader, "activity" );
+			while ( reader.hasNext( ) ) {
+				
+				DateTime dateTime = null;
+				String activityLevel = null;
+				double value = 0;
 				
-				JsonObject dataPointObject = dataPoint.getAsJsonObject( );
-				String dateTime = dataPointObject.get( "dateTime" ).getAsString( );
+				reader.beginObject( );
+				while ( reader.hasNext( ) ) {
+					String name = reader.nextName( );
+					if ( reader.peek( ) == JsonToken.NULL )
+						reader.nextNull( );
+					else if ( name.equals( "dateTime" ) )
+						dateTime = DATE_TIME_FORMAT.parseDateTime( reader.nextString( ) );
+					else if ( name.equals( "value" ) )
+						value = reader.nextDouble( );
+					else if ( name.equals( "activityLevel" ) )
+						activityLevel = canonical( levelNames, reader.nextString( ) );
+					else
+						reader.skipValue( );
+				}
+				reader.endObject( );
+				
+				if ( dateTime == null )
+					throw new IOException( "Data point missing dateTime" );
 				
-				DateTime dt = DATE_TIME_FORMAT.parseDateTime( dateTime );
-				Interval interval = new Interval( dt, dt.plusMinutes( intervalSize ).minusSeconds( 1 ) );
-				this.processDataPoint( interval, dataPointObject );
+				if ( dateTimes.size( ) == values.length )
+					values = Arrays.copyOf( values, values.length * 2 );
+				values[ dateTimes.size( ) ] = value;
+				dateTimes.add( dateTime );
+				activityLevels.add( activityLevel );
 			}
+			
+			int intervalSize = computeIntervalSize( dateTimes );
+			Intervals.Day day = null;
+			for ( int i = 0; i < dateTimes.size( ); i++ ) {
+				DateTime dt = dateTimes.get( i );
+				if ( day == null || !day.contains( dt, intervalSize ) )
+					day = Intervals.day( dt, intervalSize );
+				this.processDataPoint( day.get( dt ), values[ i ], activityLevels.get( i ) );
+			}
+		}
+		
+		/**
+		 * One instance per distinct level name within a response
+		 */
+		private static String canonical( Map<String,String> names, String name ) {
+			String existing = names.get( name );
+			if ( existing != null )
+				return existing;
+			names.put( name, name );
+			return name;
 		}
 		
-		private int computeIntervalSize( JsonArray dataPoints ) {
+		private int computeIntervalSize( List<DateTime> dateTimes ) {
 			
 			DateTime previousDateTime = null;
 			int intervalSum = 0;
 			float intervalCount = 0;
-			for ( JsonElement dataPoint : dataPoints ) {
-
-				String dateTime = dataPoint
-					.getAsJsonObject( )
-					.get( "dateTime" )
-					.getAsString( );
-				
-				DateTime dt = DATE_TIME_FORMAT.parseDateTime( dateTime );
+			for ( DateTime dt : dateTimes ) {
 				if ( previousDateTime != null ) {
 					intervalCount++;
 					intervalSum += Minutes.minutesBetween( previousDateTime, dt ).getMinutes( );
@@ -117,25 +176,29 @@ public class Fitbit {
 		
 		List<Weight> weights = new ArrayList<Weight>( );
 		
-		protected void processResponse( String json ) {
+		protected void processResponse( Reader json ) throws IOException {
 			
-			JsonParser parser = new JsonParser( );
-			
-			JsonArray dataPoints = parser.parse( json ).getAsJsonObject( )
-				.get( "graph" ).getAsJsonObject( )
-				.get( "dataSets" ).getAsJsonObject( )
-				.get( "weight" ).getAsJsonObject( )
-				.get( "dataPoints" ).getAsJsonArray( );
-			
-			for ( JsonElement dataPoint : dataPoints ) {
-
-				JsonObject dataPointObject = dataPoint.getAsJsonObject( );
+			JsonReader reader = new JsonReader( json );
+			seekDataPoints( reader, "weight" );
+			while ( reader.hasNext( ) ) {
 				
 				Weight w = new Weight( );
-				w.setDateTime( DATE_TIME_FORMAT.parseDateTime(
-					dataPointObject.get( "dateTime" ).getAsString( )
-				) );
-				w.setValue( dataPointObject.get( "value" ).getAsFloat( ) );
+				reader.beginObject( );
+				while ( reader.hasNext( ) ) {
+					String name = reader.nextName( );
+					if ( reader.peek( ) == JsonToken.NULL )
+						reader.nextNull( );
+					else if ( name.equals( "dateTime" ) )
+						w.setDateTime( DATE_TIME_FORMAT.parseDateTime( reader.nextString( ) ) );
+					else if ( name.equals( "value" ) )
+						w.setValue( (float) reader.nextDouble( ) );
+					else
+						reader.skipValue( );
+				}
+				reader.endObject( );
+				
+				if ( w.getDateTime( ) == null )
+					throw new IOException( "Data point missing dateTime" );
 				
 				weights.add( w );
 			}
@@ -148,12 +211,45 @@ public class Fitbit {
 	
 	protected static abstract class ResponseHandler {
 		
-		protected abstract void processResponse( String json );
+		/**
+		 * Positions reader inside the graph.dataSets.[dataSet].dataPoints array,
+		 * skipping the rest of the response without building a tree
+		 */
+		protected static void seekDataPoints( JsonReader reader, String dataSet ) throws IOException {
+			seekProperty( reader, "graph" );
+			seekProperty( reader, "dataSets" );
+			seekProperty( reader, dataSet );
+			seekProperty( reader, "dataPoints" );
+			reader.beginArray( );
+		}
+		
+		private static void seekProperty( JsonReader reader, String name ) throws IOException {
+			reader.beginObject( );
+			while ( reader.hasNext( ) ) {
+				if ( reader.nextName( ).equals( name ) )
+					return;
+				reader.skipValue( );
+			}
+			throw new IOException( "Response missing " + name );
+		}
+		
+		private long exchangeMillis;
+		
+		/**
+		 * @return time spent executing request and processing response, excluding admission
+		 */
+		public long getExchangeMillis( ) {
+			return this.exchangeMillis;
+		}
+		
+		protected abstract void processResponse( Reader json ) throws IOException;
 
 	}
 	
 	private static final String AJAX_API_URL = "https://www.fitbit.com/ajaxapi";
 	
+	private static final int CONNECTION_REQUEST_TIMEOUT_MILLIS = 30000;
+	
 	private static final String GRAPH_BASE_URL = "http://www.fitbit.com/graph/getNewGraphData";
 
 	private static final String I18N_URL = "https://www.fitbit.com/i18n/switch";
@@ -162,6 +258,10 @@ public class Fitbit {
 	
 	private static final String SLEEP_BASE_URL = "http://www.fitbit.com/sleep/";
 	
+	private static final Pattern SLEEP_RECORD_PATTERN = Pattern.compile( "sleepRecord\\.([0-9]+)" );
+	
+	private static final Pattern USER_ID_PATTERN = Pattern.compile( "./user/([A-Z0-9]+)" );
+	
 	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormat.forPattern( "yyyy-M-dd" ).withLocale( Locale.US );
 
 	private static final DateTimeFormatter DATE_TIME_FORMAT =  DateTimeFormat.forPattern( "yyyy-M-dd HH:mm:ss" ).withLocale( Locale.US );
@@ -181,7 +281,13 @@ public class Fitbit {
 	}
 	
 	protected static HttpClient createHttpClient( ) {
+		return createHttpClient( RequestScheduler.DEFAULT_INTERACTIVE_CONCURRENCY + RequestScheduler.DEFAULT_BACKFILL_CONCURRENCY );
+	}
+	
+	protected static HttpClient createHttpClient( int maxConnections ) {
 		return HttpClientBuilder.create( )
+			.setMaxConnPerRoute( maxConnections )
+			.setMaxConnTotal( maxConnections * 2 )
 			.setRedirectStrategy( new DefaultRedirectStrategy( ) {
 				@Override
 				public boolean isRedirected( HttpRequest request, HttpResponse response, HttpContext context ) throws ProtocolException {
@@ -189,16 +295,25 @@ public class Fitbit {
 					return super.isRedirected( request, response, context ) || responseCode == 301 || responseCode == 302;
 				}
 			} )
-			.setDefaultRequestConfig( RequestConfig.custom( ).setCookieSpec( CookieSpecs.BROWSER_COMPATIBILITY ).build( ) )
+			.setDefaultRequestConfig( RequestConfig.custom( )
+				.setCookieSpec( CookieSpecs.BROWSER_COMPATIBILITY )
+				.setConnectionRequestTimeout( CONNECTION_REQUEST_TIMEOUT_MILLIS )
+				.build( ) )
 			.build( );
 	}
 	
 	private HttpClient httpClient;
 	
+	private Priority priority = Priority.INTERACTIVE;
+	
+	private RequestScheduler scheduler;
+	
 	private String userId;
 	
 	private String userLocale;
 	
+	private Map<Priority,WeightRangePlanner> weightPlanners;
+	
 	/**
 	 * Constructor attempts to authenticate based on provided credentials. If it fails,
 	 * an authentication exception is thrown.
@@ -208,10 +323,45 @@ public class Fitbit {
 	 * @throws FitbitAuthenticationException if authentication fails
 	 */
 	public Fitbit( String email, String password ) throws FitbitAuthenticationException {
-		this.httpClient = createHttpClient( );
+		this( email, password, new RequestScheduler( ) );
+	}
+	
+	/**
+	 * Constructor attempts to authenticate based on provided credentials. If it fails,
+	 * an authentication exception is thrown.
+	 * 
+	 * @param email address on Fitbit account
+	 * @param password of Fitbit account
+	 * @param scheduler admitting requests issued by this client, may be shared between clients
+	 * @throws FitbitAuthenticationException if authentication fails
+	 */
+	public Fitbit( String email, String password, RequestScheduler scheduler ) throws FitbitAuthenticationException {
+		this.scheduler = scheduler;
+		this.httpClient = createHttpClient( scheduler.getConcurrency( ) );
+		
+		//chunks of each priority are queued separately, so backfill chunks never delay interactive ones
+		this.weightPlanners = new EnumMap<Priority,WeightRangePlanner>( Priority.class );
+		for ( Priority p : Priority.values( ) )
+			this.weightPlanners.put( p, new WeightRangePlanner( scheduler.getConcurrency( p ) ) );
+		
 		this.userId = authenticate( email, password );
 	}
 	
+	/**
+	 * Creates a view of an authenticated client issuing requests at another priority
+	 * 
+	 * @param source authenticated client
+	 * @param priority of requests issued through view
+	 */
+	protected Fitbit( Fitbit source, Priority priority ) {
+		this.httpClient = source.httpClient;
+		this.scheduler = source.scheduler;
+		this.userId = source.userId;
+		this.userLocale = source.userLocale;
+		this.weightPlanners = source.weightPlanners;
+		this.priority = priority;
+	}
+	
 	/**
 	 * Workaround for users with Fitbit user profile set to other other than en_US. Due
 	 * to the many variations in responses, this client is only compatible handling
@@ -222,14 +372,16 @@ public class Fitbit {
 	 * @return true if successful
 	 */
 	public boolean enableLocaleOverride( ) {
+		RequestScheduler.Permit permit = this.acquirePermit( );
 		try {
 			URIBuilder builder = new URIBuilder( I18N_URL );
 			builder.addParameter( "locale", "en_US" );
 			HttpGet get = new HttpGet( builder.build( ).toURL( ).toString( ) );
-			String result = EntityUtils.toString( this.getHttpClient( ).execute( get ).getEntity( ) ).trim( );
-			return result.contains("Succeeded" );
+			return ResponseStreams.contains( this.getHttpClient( ).execute( get ).getEntity( ), "Succeeded" );
 		} catch( Exception e ) {
 			throw new FitbitExecutionException( e );
+		} finally {
+			permit.release( );
 		}
 	}
 	
@@ -245,11 +397,11 @@ public class Fitbit {
 		this.getGraphData( "intradayCaloriesBurned", date, null, new ActivityResponseHandler( ) {
 			
 			@Override
-			protected void processDataPoint( Interval interval, JsonObject dataPoint ) {
+			protected void processDataPoint( Interval interval, double value, String activityLevel ) {
 				CalorieBurn cb = new CalorieBurn( );
-				cb.setValue( dataPoint.get( "value" ).getAsInt( ) );
+				cb.setValue( (int) value );
 				cb.setInterval( interval );
-				cb.setActivityLevel( dataPoint.get( "activityLevel" ).getAsString( ) );
+				cb.setActivityLevel( activityLevel );
 				result.add( cb );
 			}
 		} );
@@ -269,9 +421,9 @@ public class Fitbit {
 		this.getGraphData( "intradayFloors", date, null, new ActivityResponseHandler( ) {
 			
 			@Override
-			protected void processDataPoint( Interval interval, JsonObject dataPoint ) {
+			protected void processDataPoint( Interval interval, double value, String activityLevel ) {
 				FloorCount fc = new FloorCount( );
-				fc.setValue( dataPoint.get( "value" ).getAsInt( ) );
+				fc.setValue( (int) value );
 				fc.setInterval( interval );
 				result.add( fc );
 			}
@@ -297,9 +449,9 @@ public class Fitbit {
 			
 			getGraphData( "intradaySleep", date, Collections.singletonMap( "arg", sessionId ), new ActivityResponseHandler( ) {
 				@Override
-				protected void processDataPoint( Interval interval, JsonObject dataPoint ) {
+				protected void processDataPoint( Interval interval, double value, String activityLevel ) {
 					SleepLevel sl = new SleepLevel( );
-					sl.setValue( dataPoint.get( "value" ).getAsInt( ) );
+					sl.setValue( (int) value );
 					sl.setInterval( interval );
 					levels.add( sl );
 				}
@@ -331,9 +483,9 @@ public class Fitbit {
 		final List<StepCount> result = new ArrayList<StepCount>( );
 		this.getGraphData( "intradaySteps", date, null, new ActivityResponseHandler( ) {
 			@Override
-			protected void processDataPoint( Interval interval, JsonObject dataPoint ) {
+			protected void processDataPoint( Interval interval, double value, String activityLevel ) {
 				StepCount sc = new StepCount( );
-				sc.setValue( dataPoint.get( "value" ).getAsInt( ) );
+				sc.setValue( (int) value );
 				sc.setInterval( interval );
 				result.add( sc );
 			}
@@ -343,18 +495,25 @@ public class Fitbit {
 	}
 	
 	/**
-	 * Provides records weight over the provided time interval
+	 * Provides records weight over the provided time interval. Long intervals
+	 * are fetched concurrently in chunks, see {@link WeightRangePlanner}.
 	 * 
 	 * @param from date of weight interval start
 	 * @param to date of weight interval end
 	 * @return List of {@link Weight}s for interval specified
 	 */
 	public List<Weight> getWeights( LocalDate from, LocalDate to ) {
-		
-		WeightResponseHandler responseHandler = new WeightResponseHandler( );
-		this.getGraphData( "weight", from, to, null, responseHandler );
-	
-		return responseHandler.getWeights( );
+		return this.weightPlanners.get( this.priority ).getWeights( this, from, to );
+	}
+
+	/**
+	 * Drops weights cached by {@link #getWeights(LocalDate, LocalDate)}, so measurements
+	 * logged retroactively are fetched. Cached months otherwise expire after
+	 * {@link WeightRangePlanner#CACHE_TTL_MILLIS}.
+	 */
+	public void invalidateWeights( ) {
+		for ( WeightRangePlanner planner : this.weightPlanners.values( ) )
+			planner.invalidate( this.userId );
 	}
 
 	/**
@@ -364,6 +523,7 @@ public class Fitbit {
 	 */
 	public FitbitTracker getTracker( ) {
 		
+		RequestScheduler.Permit permit = this.acquirePermit( );
 		try {
 			
 			JsonArray serviceCalls = new JsonArray( );
@@ -380,17 +540,24 @@ public class Fitbit {
 			builder.addParameter( "request", request.toString( ) );
 			HttpGet post = new HttpGet( builder.build( ).toURL( ).toString( ) );
 			HttpResponse response = this.getHttpClient( ).execute( post );
-			if ( response.getStatusLine( ).getStatusCode( ) != 200 )
+			if ( response.getStatusLine( ).getStatusCode( ) != 200 ) {
+				//release connection back to the pool before failing
+				ResponseStreams.consume( response.getEntity( ) );
 				throw new FitbitExecutionException( );
+			}
 			
-			String result = EntityUtils.toString( response.getEntity( ) ).trim( );
-			
-			JsonParser parser = new JsonParser( );
-			JsonArray jsonResult = parser.parse( result ).getAsJsonObject( )
-				.get( "ajaxResponse" ).getAsJsonObject( )
-				.get( "newResult" ).getAsJsonObject( )
-				.get( "getOwnerDevices" ).getAsJsonObject( )
-				.get( "result" ).getAsJsonArray( );
+			JsonArray jsonResult;
+			Reader reader = ResponseStreams.reader( response.getEntity( ) );
+			try {
+				JsonParser parser = new JsonParser( );
+				jsonResult = parser.parse( reader ).getAsJsonObject( )
+					.get( "ajaxResponse" ).getAsJsonObject( )
+					.get( "newResult" ).getAsJsonObject( )
+					.get( "getOwnerDevices" ).getAsJsonObject( )
+					.get( "result" ).getAsJsonArray( );
+			} finally {
+				reader.close( );
+			}
 			
 			if ( jsonResult.size( ) > 0 ) {
 				
@@ -412,6 +579,8 @@ public class Fitbit {
 			throw new FitbitExecutionException( e );
 		} catch( URISyntaxException e ) {
 			throw new FitbitExecutionException( e );
+		} finally {
+			permit.release( );
 		}
 	}
 	
@@ -424,6 +593,18 @@ public class Fitbit {
 		return this.userId;
 	}
 	
+	/**
+	 * Provides a client sharing this client's session whose requests are admitted
+	 * at the given priority. Use {@link Priority#BACKFILL} for bulk historical fetches
+	 * so they don't delay interactive requests.
+	 * 
+	 * @param priority of requests
+	 * @return Fitbit client issuing requests at priority
+	 */
+	public Fitbit withPriority( Priority priority ) {
+		return priority == this.priority ? this : new Fitbit( this, priority );
+	}
+	
 	/**
 	 * Restore user location to original value discovered during authentication. This is used to 
 	 * undo the override enabled in {@link #enableLocaleOverride()}
@@ -432,29 +613,32 @@ public class Fitbit {
 	 * @return true if successful
 	 */
 	public boolean restoreUserLocale( ) {
+		RequestScheduler.Permit permit = this.acquirePermit( );
 		try {
 			
 			if ( this.userLocale != null ) {
 				URIBuilder builder = new URIBuilder( I18N_URL );
 				builder.addParameter( "locale", this.userLocale );
 				HttpGet get = new HttpGet( builder.build( ).toURL( ).toString( ) );
-				String result = EntityUtils.toString( this.getHttpClient( ).execute( get ).getEntity( ) ).trim( );
-				return result.contains("Succeeded" );
+				return ResponseStreams.contains( this.getHttpClient( ).execute( get ).getEntity( ), "Succeeded" );
 			}
 			
 			return false;
 			
 		} catch( Exception e ) {
 			throw new FitbitExecutionException( e );
+		} finally {
+			permit.release( );
 		}
 	}
 	
 	protected String authenticate( String email, String password ) throws FitbitAuthenticationException {
 
-		String response = null;
+		String userId = null;
+		RequestScheduler.Permit permit = this.acquirePermit( );
 		try {
 			//go ahead and consume it – if on Android, we don't have #consume on EntityUtils
-			EntityUtils.toString( this.getHttpClient( ).execute( new HttpGet( LOGIN_URL ) ).getEntity( ) );
+			ResponseStreams.consume( this.getHttpClient( ).execute( new HttpGet( LOGIN_URL ) ).getEntity( ) );
 			
 			HttpPost loginPost = new HttpPost( LOGIN_URL );
 			List<NameValuePair> parameters = new ArrayList<NameValuePair>( );
@@ -466,7 +650,7 @@ public class Fitbit {
 			loginPost.setEntity( formEntity );
 			
 			HttpResponse httpResponse = this.httpClient.execute( loginPost );
-			response = EntityUtils.toString( httpResponse.getEntity( ) );
+			userId = ResponseStreams.find( httpResponse.getEntity( ), USER_ID_PATTERN, 64 );
 			
 			this.userLocale = httpResponse.getLastHeader( "Content-Language" ).getValue( );
 			if ( this.userLocale != null )
@@ -474,13 +658,14 @@ public class Fitbit {
 			
 		} catch( Exception e ) {
 			throw new FitbitExecutionException( e );
+		} finally {
+			permit.release( );
 		}
 		
-		Matcher m = Pattern.compile( "./user/([A-Z0-9]+)" ).matcher( response );
-		if ( !m.find( ) )
+		if ( userId == null )
 			throw new FitbitAuthenticationException( );
 		
-		return m.group( 1 );
+		return userId;
 	}
 	
 	protected URL buildGraphUrl( String type, LocalDate from, LocalDate to, Map<String,String> customParams ) throws MalformedURLException, URISyntaxException {
@@ -504,43 +689,71 @@ public class Fitbit {
 	}
 	
 	protected void getGraphData( String type, LocalDate from, LocalDate to, Map<String,String> customParams, ResponseHandler handler ) {
+		RequestScheduler.Permit permit = this.acquirePermit( );
+		long start = System.currentTimeMillis( );
 		try {
 			HttpGet get = new HttpGet( buildGraphUrl( type, from, to, customParams ).toString( ) );
 			HttpResponse response = this.getHttpClient( ).execute( get );
-			if ( response.getStatusLine( ).getStatusCode( ) != 200 )
+			if ( response.getStatusLine( ).getStatusCode( ) != 200 ) {
+				//release connection back to the pool before failing
+				ResponseStreams.consume( response.getEntity( ) );
 				throw new FitbitExecutionException( );
+			}
 			
-			String result = EntityUtils.toString( response.getEntity( ) ).trim( );
-			handler.processResponse( result );
+			Reader reader = ResponseStreams.reader( response.getEntity( ) );
+			try {
+				handler.processResponse( reader );
+			} finally {
+				reader.close( );
+			}
+			handler.exchangeMillis = System.currentTimeMillis( ) - start;
 		} catch( IOException e ) {
 			throw new FitbitExecutionException( e );
 		} catch( URISyntaxException e ) {
 			throw new FitbitExecutionException( e );
+		} finally {
+			permit.release( );
 		}
 	}
 	
+	/**
+	 * Fetches weights over range with a single request
+	 * 
+	 * @return handler holding {@link Weight}s and exchange time
+	 */
+	protected WeightResponseHandler fetchWeights( LocalDate from, LocalDate to ) {
+		
+		WeightResponseHandler responseHandler = new WeightResponseHandler( );
+		this.getGraphData( "weight", from, to, null, responseHandler );
+	
+		return responseHandler;
+	}
+	
 	protected HttpClient getHttpClient( ) {
 		return this.httpClient;
 	}
 	
+	protected RequestScheduler.Permit acquirePermit( ) {
+		return this.scheduler.acquire( this.priority );
+	}
+	
 	protected List<String> getSleepSessionIds( LocalDate date ) {
 		
-		List<String> sessions = new ArrayList<String>( );
+		RequestScheduler.Permit permit = this.acquirePermit( );
 		try {
 			HttpGet pageGet = new HttpGet( SLEEP_BASE_URL + URL_DATE_FORMAT.print( date ) );
 			HttpResponse response = this.getHttpClient( ).execute( pageGet );
-			if ( response.getStatusLine( ).getStatusCode( ) != 200 )
+			if ( response.getStatusLine( ).getStatusCode( ) != 200 ) {
+				//release connection back to the pool before failing
+				ResponseStreams.consume( response.getEntity( ) );
 				throw new FitbitExecutionException( );
-			
-			String pageResult = EntityUtils.toString( response.getEntity( ) );
-			Matcher m = Pattern.compile( "sleepRecord\\.([0-9]+)" ).matcher( pageResult );
-			while ( m.find( ) ) {
-				sessions.add( m.group( 1 ) );
 			}
+			
+			return ResponseStreams.findAll( response.getEntity( ), SLEEP_RECORD_PATTERN, 64 );
 		} catch( IOException e ) {
 			throw new FitbitExecutionException( e );
+		} finally {
+			permit.release( );
 		}
-		
-		return sessions;
 	}
 }
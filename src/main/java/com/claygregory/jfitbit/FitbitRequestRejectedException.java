@@ -0,0 +1,19 @@
+package com.claygregory.jfitbit;
+
+/**
+ * 
+ * Request shed by the {@link RequestScheduler} before being sent, either because
+ * too many requests of its priority were already waiting or because it could not
+ * start before its deadline. Safe to retry later.
+ * 
+ * @author Clay Gregory
+ *
+ */
+public class FitbitRequestRejectedException extends FitbitExecutionException {
+
+	private static final long serialVersionUID = 6087514357021745531L;
+
+	public FitbitRequestRejectedException( ) {
+		super( );
+	}
+}
@@ -0,0 +1,163 @@
+package com.claygregory.jfitbit;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+
+/**
+ * Canonical interval instances for intraday series. Series for the same day share
+ * interval boundaries, so one immutable {@link Interval} per (day, interval size, index)
+ * is shared across steps, floors, calories and sleep. Slots are kept for a bounded
+ * number of recent days.
+ * 
+ * @author Clay Gregory
+ *
+ */
+final class Intervals {
+	
+	private static class Key {
+		
+		private final long dayStartMillis;
+		
+		private final int intervalMinutes;
+		
+		private final DateTimeZone zone;
+		
+		private Key( long dayStartMillis, int intervalMinutes, DateTimeZone zone ) {
+			this.dayStartMillis = dayStartMillis;
+			this.intervalMinutes = intervalMinutes;
+			this.zone = zone;
+		}
+		
+		@Override
+		public boolean equals( Object o ) {
+			if ( !( o instanceof Key ) )
+				return false;
+			Key k = (Key) o;
+			return k.dayStartMillis == this.dayStartMillis && k.intervalMinutes == this.intervalMinutes && k.zone.equals( this.zone );
+		}
+		
+		@Override
+		public int hashCode( ) {
+			return (int) ( this.dayStartMillis ^ ( this.dayStartMillis >>> 32 ) ) * 31 + this.intervalMinutes * 17 + this.zone.hashCode( );
+		}
+	}
+	
+	/**
+	 * Interval slots of one day at one interval size. Looking up a day takes a shared
+	 * lock, so callers resolving many points should look the day up once and read its
+	 * slots directly.
+	 */
+	static final class Day {
+		
+		private final long endMillis;
+		
+		private final long intervalMillis;
+		
+		private final int intervalMinutes;
+		
+		private final Interval[] slots;
+		
+		private final long startMillis;
+		
+		private final DateTimeZone zone;
+		
+		private Day( DateTime dayStart, int intervalMinutes ) {
+			this.startMillis = dayStart.getMillis( );
+			this.endMillis = dayStart.plusDays( 1 ).withTimeAtStartOfDay( ).getMillis( );
+			this.intervalMinutes = intervalMinutes;
+			this.intervalMillis = intervalMinutes * 60000L;
+			this.zone = dayStart.getZone( );
+			this.slots = new Interval[ intervalMinutes > 0 ? (int) ( ( this.endMillis - this.startMillis + this.intervalMillis - 1 ) / this.intervalMillis ) : 0 ];
+		}
+		
+		/**
+		 * @return true if start falls on this day, and intervals are of the given size
+		 */
+		boolean contains( DateTime start, int intervalMinutes ) {
+			long millis = start.getMillis( );
+			return intervalMinutes == this.intervalMinutes && millis >= this.startMillis && millis < this.endMillis && start.getZone( ).equals( this.zone );
+		}
+		
+		/**
+		 * Provides the interval beginning at start, covering the interval size less one second
+		 * 
+		 * @param start of interval
+		 * @return shared Interval when start falls on the day's interval grid, otherwise a new instance
+		 */
+		Interval get( DateTime start ) {
+			
+			if ( !this.contains( start, this.intervalMinutes ) )
+				return create( start, this.intervalMinutes );
+			
+			long offset = start.getMillis( ) - this.startMillis;
+			if ( this.slots.length == 0 || offset % this.intervalMillis != 0 )
+				return create( start, this.intervalMinutes );
+			
+			//racing threads may each create the slot; intervals are immutable, so either instance is fine
+			int index = (int) ( offset / this.intervalMillis );
+			Interval interval = this.slots[ index ];
+			if ( interval == null || !interval.getChronology( ).equals( start.getChronology( ) ) ) {
+				interval = create( start, this.intervalMinutes );
+				this.slots[ index ] = interval;
+			}
+			return interval;
+		}
+	}
+	
+	private static final int MAX_DAYS = 64;
+	
+	private static final Map<Key,Day> DAYS = new LinkedHashMap<Key,Day>( 16, 0.75f, true ) {
+		
+		private static final long serialVersionUID = -3204786283547106391L;
+		
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<Key,Day> eldest ) {
+			return this.size( ) > MAX_DAYS;
+		}
+	};
+	
+	/**
+	 * Provides the slots of the day containing start
+	 * 
+	 * @param start of an interval on the day
+	 * @param intervalMinutes size of intervals
+	 * @return Day whose {@link Day#get(DateTime)} needs no locking
+	 */
+	static Day day( DateTime start, int intervalMinutes ) {
+		
+		DateTime dayStart = start.withTimeAtStartOfDay( );
+		if ( intervalMinutes <= 0 )
+			return new Day( dayStart, intervalMinutes );
+		
+		Key key = new Key( dayStart.getMillis( ), intervalMinutes, start.getZone( ) );
+		synchronized ( DAYS ) {
+			Day day = DAYS.get( key );
+			if ( day == null ) {
+				day = new Day( dayStart, intervalMinutes );
+				DAYS.put( key, day );
+			}
+			return day;
+		}
+	}
+	
+	/**
+	 * Provides the interval beginning at start, covering intervalMinutes less one second
+	 * 
+	 * @param start of interval
+	 * @param intervalMinutes size of interval
+	 * @return shared Interval when start falls on the day's interval grid, otherwise a new instance
+	 */
+	static Interval get( DateTime start, int intervalMinutes ) {
+		return day( start, intervalMinutes ).get( start );
+	}
+	
+	private static Interval create( DateTime start, int intervalMinutes ) {
+		return new Interval( start, start.plusMinutes( intervalMinutes ).minusSeconds( 1 ) );
+	}
+	
+	private Intervals( ) { }
+}
@@ -0,0 +1,829 @@
+package com.claygregory.jfitbit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.joda.time.Days;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+
+import com.claygregory.jfitbit.SleepSession.SleepLevel;
+
+/**
+ * Embedded, file-backed store for intraday series. Days are appended as fixed-stride
+ * segments to one data file per (user, series), alongside an index of the days stored.
+ * Data files are memory-mapped on read, so stored series live outside the Java heap and
+ * survive restarts.
+ *
+ * <p>{@link Segment}s provide zero-copy access to the mapped records. A day becomes visible
+ * only once its segment has been written and published in an immutable index snapshot,
+ * so readers never observe a partially written segment and need no locking. Rewriting a
+ * day appends a new segment which supersedes the old one. Writes to different (user, series)
+ * files proceed in parallel.</p>
+ *
+ * <p>By default each put is forced to disk before returning. A store created without sync
+ * leaves forcing to {@link #flush()}, so bulk loads pay for one force per file per flush
+ * rather than per day. Index entries reach disk only after their segments, so either way
+ * a crash loses unflushed days but never exposes a partial one.</p>
+ *
+ * <p>Data files are grown geometrically and remapped only when they grow, so each open file
+ * holds one current mapping. At most a bounded number of (user, series) files are kept open;
+ * the least recently used are flushed and dropped, and their mappings released once no
+ * longer referenced.</p>
+ *
+ * @author Clay Gregory
+ *
+ */
+public class IntradayStore {
+
+	/**
+	 * Series kept by the store. Weight is not intraday but is kept per day alongside.
+	 */
+	public static enum Series {
+		CALORIES, FLOORS, SLEEP, STEPS, WEIGHT
+	}
+
+	/**
+	 * Read-only view over a mapped segment. Records are read directly from
+	 * the mapping; nothing is copied onto the heap until materialized.
+	 */
+	public static class Segment {
+
+		private final ByteBuffer buffer;
+
+		private final int groups;
+
+		private volatile Intervals.Day day;
+
+		private final ActivityLevel[] levels;
+
+		private final String[] levelNames;
+
+		private final Series series;
+
+		private final int size;
+
+		private Segment( ByteBuffer buffer ) throws IOException {
+
+			if ( buffer.getInt( 0 ) != MAGIC || buffer.getInt( 4 ) != VERSION || buffer.getInt( 16 ) != STRIDE )
+				throw new IOException( "Unrecognized segment format" );
+
+			this.buffer = buffer;
+			this.series = Series.values( )[ buffer.getInt( 8 ) ];
+			this.size = buffer.getInt( 12 );
+			this.groups = buffer.getInt( 24 );
+
+			int offset = buffer.getInt( 20 );
+			this.levelNames = new String[ buffer.getInt( offset ) ];
+			this.levels = new ActivityLevel[ this.levelNames.length ];
+			offset += 4;
+			for ( int i = 0; i < this.levels.length; i++ ) {
+				byte[] tag = new byte[ buffer.getShort( offset ) ];
+				offset += 2;
+				for ( int j = 0; j < tag.length; j++ )
+					tag[ j ] = buffer.get( offset++ );
+				this.levelNames[ i ] = tag.length > 0 ? new String( tag, UTF_8 ) : null;
+				this.levels[ i ] = ActivityLevel.parse( this.levelNames[ i ] );
+			}
+		}
+
+		/**
+		 * @param index of record
+		 * @return activity level of calorie burn record as reported by Fitbit, or null for other series
+		 */
+		public String getActivityLevel( int index ) {
+			return this.series == Series.CALORIES ? this.levelNames[ this.getTag( index ) ] : null;
+		}
+
+		public long getEndMillis( int index ) {
+			return this.getStartMillis( index ) + this.buffer.getInt( offset( index ) + 8 );
+		}
+
+		/**
+		 * @return number of sleep sessions in segment, zero for other series
+		 */
+		public int getGroupCount( ) {
+			return this.groups;
+		}
+
+		public Interval getInterval( int index ) {
+			long start = this.getStartMillis( index );
+			int duration = this.buffer.getInt( offset( index ) + 8 );
+
+			//intervals stored from Fitbit span whole minutes less one second
+			if ( ( duration + 1000 ) % 60000 == 0 ) {
+				DateTime dt = new DateTime( start );
+				int minutes = ( duration + 1000 ) / 60000;
+				Intervals.Day day = this.day;
+				if ( day == null || !day.contains( dt, minutes ) )
+					this.day = day = Intervals.day( dt, minutes );
+				return day.get( dt );
+			}
+			return new Interval( start, start + duration );
+		}
+
+		/**
+		 * @param index of record
+		 * @return parsed activity level of calorie burn record, or null for other series
+		 */
+		public ActivityLevel getLevel( int index ) {
+			return this.series == Series.CALORIES ? this.levels[ this.getTag( index ) ] : null;
+		}
+
+		/**
+		 * @param index of record
+		 * @return sleep session the record belongs to, or zero for other series
+		 */
+		public int getSessionIndex( int index ) {
+			return this.series == Series.SLEEP ? this.getTag( index ) : 0;
+		}
+
+		public Series getSeries( ) {
+			return this.series;
+		}
+
+		public long getStartMillis( int index ) {
+			return this.buffer.getLong( offset( index ) );
+		}
+
+		public int getValue( int index ) {
+			return this.buffer.getInt( offset( index ) + 12 );
+		}
+
+		/**
+		 * @param index of record
+		 * @return weight measurement of weight record
+		 */
+		public float getWeightValue( int index ) {
+			return Float.intBitsToFloat( this.getValue( index ) );
+		}
+
+		public int size( ) {
+			return this.size;
+		}
+
+		private int getTag( int index ) {
+			return this.buffer.getInt( offset( index ) + 16 );
+		}
+
+		private int offset( int index ) {
+			if ( index < 0 || index >= this.size )
+				throw new IndexOutOfBoundsException( String.valueOf( index ) );
+			return HEADER_SIZE + index * STRIDE;
+		}
+	}
+
+	/**
+	 * Data and index files for a (user, series). The data file is grown geometrically and
+	 * mapped once per growth; days are written through the mapping. Appends and flushes
+	 * are made under the store's lock for the file.
+	 */
+	private static class SeriesFile {
+
+		/**
+		 * Immutable snapshot of stored days, sorted by day
+		 */
+		private static class Index {
+
+			private static final Index EMPTY = new Index( new int[ 0 ], new long[ 0 ], new int[ 0 ] );
+
+			private final int[] days;
+
+			private final int[] lengths;
+
+			private final long[] offsets;
+
+			private Index( int[] days, long[] offsets, int[] lengths ) {
+				this.days = days;
+				this.offsets = offsets;
+				this.lengths = lengths;
+			}
+
+			private int find( int day ) {
+				return Arrays.binarySearch( this.days, day );
+			}
+
+			private Index with( int day, long offset, int length ) {
+
+				int i = this.find( day );
+				if ( i >= 0 ) {
+					long[] offsets = this.offsets.clone( );
+					int[] lengths = this.lengths.clone( );
+					offsets[ i ] = offset;
+					lengths[ i ] = length;
+					return new Index( this.days, offsets, lengths );
+				}
+
+				i = -i - 1;
+				int n = this.days.length;
+				int[] days = new int[ n + 1 ];
+				long[] offsets = new long[ n + 1 ];
+				int[] lengths = new int[ n + 1 ];
+				System.arraycopy( this.days, 0, days, 0, i );
+				System.arraycopy( this.offsets, 0, offsets, 0, i );
+				System.arraycopy( this.lengths, 0, lengths, 0, i );
+				System.arraycopy( this.days, i, days, i + 1, n - i );
+				System.arraycopy( this.offsets, i, offsets, i + 1, n - i );
+				System.arraycopy( this.lengths, i, lengths, i + 1, n - i );
+				days[ i ] = day;
+				offsets[ i ] = offset;
+				lengths[ i ] = length;
+				return new Index( days, offsets, lengths );
+			}
+		}
+
+		private final File data;
+
+		private long end;
+
+		private volatile Index entries = Index.EMPTY;
+
+		private final File index;
+
+		private volatile long lastAccess;
+
+		private volatile MappedByteBuffer mapping;
+
+		private final ByteArrayOutputStream pending = new ByteArrayOutputStream( );
+
+		private SeriesFile( File data, File index ) throws IOException {
+
+			this.data = data;
+			this.index = index;
+
+			if ( index.isFile( ) ) {
+				ByteBuffer buffer;
+				RandomAccessFile in = new RandomAccessFile( index, "r" );
+				try {
+					//a trailing partial entry is an interrupted flush, ignore it
+					buffer = ByteBuffer.allocate( (int) ( in.length( ) - in.length( ) % INDEX_ENTRY_SIZE ) );
+					in.readFully( buffer.array( ) );
+				} finally {
+					in.close( );
+				}
+
+				//later entries supersede earlier ones for the same day
+				long dataLength = data.length( );
+				Index entries = Index.EMPTY;
+				while ( buffer.hasRemaining( ) ) {
+					int day = buffer.getInt( );
+					int length = buffer.getInt( );
+					long offset = buffer.getLong( );
+					if ( offset + length <= dataLength ) {
+						entries = entries.with( day, offset, length );
+						this.end = Math.max( this.end, offset + length );
+					}
+				}
+				this.entries = entries;
+			}
+
+			if ( data.isFile( ) && data.length( ) > 0 )
+				this.map( data.length( ) );
+		}
+
+		/**
+		 * Writes segment after the last one written, and publishes it in the index
+		 */
+		private void append( int day, ByteBuffer block, boolean sync ) throws IOException {
+
+			int length = block.remaining( );
+			long offset = this.end;
+			if ( offset + length > Integer.MAX_VALUE )
+				throw new IOException( "Series file too large: " + this.data );
+
+			if ( this.mapping == null || this.mapping.capacity( ) < offset + length )
+				this.grow( offset + length );
+
+			ByteBuffer target = this.mapping.duplicate( );
+			target.position( (int) offset );
+			target.put( block );
+
+			DataOutputStream entry = new DataOutputStream( this.pending );
+			entry.writeInt( day );
+			entry.writeInt( length );
+			entry.writeLong( offset );
+
+			this.end = offset + length;
+			this.entries = this.entries.with( day, offset, length );
+
+			if ( sync )
+				this.flush( );
+		}
+
+		private boolean contains( int day ) {
+			return this.entries.find( day ) >= 0;
+		}
+
+		/**
+		 * Forces written segments to disk, then appends their index entries. The index
+		 * on disk therefore never refers to a segment which may not have been written.
+		 */
+		private void flush( ) throws IOException {
+
+			if ( this.pending.size( ) == 0 )
+				return;
+
+			this.mapping.force( );
+
+			RandomAccessFile out = new RandomAccessFile( this.index, "rw" );
+			try {
+				long position = out.length( ) - out.length( ) % INDEX_ENTRY_SIZE;
+				out.setLength( position );
+				out.seek( position );
+				out.write( this.pending.toByteArray( ) );
+				out.getChannel( ).force( false );
+			} finally {
+				out.close( );
+			}
+			this.pending.reset( );
+		}
+
+		private void grow( long required ) throws IOException {
+
+			long capacity = this.mapping != null ? this.mapping.capacity( ) : 0;
+			capacity = Math.max( Math.max( MIN_CAPACITY, capacity * 2 ), required );
+			capacity = Math.min( capacity, Integer.MAX_VALUE );
+
+			//pages written through the old mapping are forced before it's replaced
+			if ( this.mapping != null && this.pending.size( ) > 0 )
+				this.mapping.force( );
+
+			this.map( capacity );
+		}
+
+		private void map( long capacity ) throws IOException {
+			RandomAccessFile file = new RandomAccessFile( this.data, "rw" );
+			try {
+				if ( file.length( ) < capacity )
+					file.setLength( capacity );
+				this.mapping = file.getChannel( ).map( FileChannel.MapMode.READ_WRITE, 0, capacity );
+			} finally {
+				file.close( );
+			}
+		}
+
+		private Segment segment( int day ) throws IOException {
+
+			//entries are read before the mapping, which is replaced before entries refer beyond it
+			Index entries = this.entries;
+			int i = entries.find( day );
+			if ( i < 0 )
+				return null;
+
+			int offset = (int) entries.offsets[ i ];
+			ByteBuffer slice = this.mapping.asReadOnlyBuffer( );
+			slice.limit( offset + entries.lengths[ i ] );
+			slice.position( offset );
+			return new Segment( slice.slice( ) );
+		}
+	}
+
+	public static final int DEFAULT_MAX_OPEN_FILES = 1024;
+
+	private static final LocalDate EPOCH = new LocalDate( 1970, 1, 1 );
+
+	private static final int HEADER_SIZE = 32;
+
+	private static final int INDEX_ENTRY_SIZE = 16;
+
+	private static final int LOCK_STRIPES = 64;
+
+	private static final int MAGIC = 0x4A464253;
+
+	private static final long MIN_CAPACITY = 256 * 1024;
+
+	private static final int STRIDE = 20;
+
+	private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+	private static final int VERSION = 1;
+
+	private final AtomicLong clock = new AtomicLong( );
+
+	private final File directory;
+
+	private final ConcurrentMap<String,SeriesFile> files = new ConcurrentHashMap<String,SeriesFile>( );
+
+	private final Object[] locks = new Object[ LOCK_STRIPES ];
+
+	private final int maxOpenFiles;
+
+	private final boolean sync;
+
+	/**
+	 * @param directory root directory of store, created if not present
+	 */
+	public IntradayStore( File directory ) {
+		this( directory, DEFAULT_MAX_OPEN_FILES, true );
+	}
+
+	/**
+	 * @param directory root directory of store, created if not present
+	 * @param maxOpenFiles maximum (user, series) files kept open and mapped
+	 */
+	public IntradayStore( File directory, int maxOpenFiles ) {
+		this( directory, maxOpenFiles, true );
+	}
+
+	/**
+	 * @param directory root directory of store, created if not present
+	 * @param maxOpenFiles maximum (user, series) files kept open and mapped
+	 * @param sync if true, each put is forced to disk before returning; otherwise puts
+	 * are readable immediately but only survive a restart once {@link #flush()} is called
+	 */
+	public IntradayStore( File directory, int maxOpenFiles, boolean sync ) {
+		if ( !directory.isDirectory( ) && !directory.mkdirs( ) )
+			throw new FitbitExecutionException( new IOException( "Unable to create " + directory ) );
+		this.directory = directory;
+		this.maxOpenFiles = maxOpenFiles;
+		this.sync = sync;
+		for ( int i = 0; i < this.locks.length; i++ )
+			this.locks[ i ] = new Object( );
+	}
+
+	/**
+	 * @param userId Fitbit user ID
+	 * @param series of data
+	 * @param date of activity logs
+	 * @return true if a segment has been stored for the user, series and date
+	 */
+	public boolean contains( String userId, Series series, LocalDate date ) {
+		SeriesFile file = this.seriesFile( key( userId, series ), false );
+		return file != null && file.contains( day( date ) );
+	}
+
+	/**
+	 * Forces puts made since the last flush to disk. Only needed when the store
+	 * was created without sync.
+	 */
+	public void flush( ) {
+		for ( Map.Entry<String,SeriesFile> entry : this.files.entrySet( ) ) {
+			synchronized ( this.lock( entry.getKey( ) ) ) {
+				try {
+					entry.getValue( ).flush( );
+				} catch( IOException e ) {
+					throw new FitbitExecutionException( e );
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param userId Fitbit user ID
+	 * @param date of activity logs
+	 * @return stored {@link CalorieBurn}s, or null if none stored for date
+	 */
+	public List<CalorieBurn> getCaloriesBurned( String userId, LocalDate date ) {
+
+		Segment segment = this.getSegment( userId, Series.CALORIES, date );
+		if ( segment == null )
+			return null;
+
+		List<CalorieBurn> result = new ArrayList<CalorieBurn>( segment.size( ) );
+		for ( int i = 0; i < segment.size( ); i++ ) {
+			CalorieBurn cb = new CalorieBurn( );
+			cb.setValue( segment.getValue( i ) );
+			cb.setInterval( segment.getInterval( i ) );
+			cb.setActivityLevel( segment.getActivityLevel( i ) );
+			result.add( cb );
+		}
+		return result;
+	}
+
+	/**
+	 * @param userId Fitbit user ID
+	 * @param date of activity logs
+	 * @return stored {@link FloorCount}s, or null if none stored for date
+	 */
+	public List<FloorCount> getFloorCount( String userId, LocalDate date ) {
+
+		Segment segment = this.getSegment( userId, Series.FLOORS, date );
+		if ( segment == null )
+			return null;
+
+		List<FloorCount> result = new ArrayList<FloorCount>( segment.size( ) );
+		for ( int i = 0; i < segment.size( ); i++ ) {
+			FloorCount fc = new FloorCount( );
+			fc.setValue( segment.getValue( i ) );
+			fc.setInterval( segment.getInterval( i ) );
+			result.add( fc );
+		}
+		return result;
+	}
+
+	/**
+	 * Provides zero-copy access to a stored segment
+	 *
+	 * @param userId Fitbit user ID
+	 * @param series of data
+	 * @param date of activity logs
+	 * @return mapped {@link Segment}, or null if none stored
+	 */
+	public Segment getSegment( String userId, Series series, LocalDate date ) {
+
+		SeriesFile file = this.seriesFile( key( userId, series ), false );
+		if ( file == null )
+			return null;
+
+		try {
+			return file.segment( day( date ) );
+		} catch( IOException e ) {
+			throw new FitbitExecutionException( e );
+		}
+	}
+
+	/**
+	 * @param userId Fitbit user ID
+	 * @param date of activity logs
+	 * @return stored {@link SleepSession}s, or null if none stored for date
+	 */
+	public List<SleepSession> getSleepSessions( String userId, LocalDate date ) {
+
+		Segment segment = this.getSegment( userId, Series.SLEEP, date );
+		if ( segment == null )
+			return null;
+
+		List<SleepSession> result = new ArrayList<SleepSession>( segment.getGroupCount( ) );
+		for ( int s = 0; s < segment.getGroupCount( ); s++ ) {
+			SleepSession session = new SleepSession( );
+			session.setSleepLevels( new ArrayList<SleepLevel>( ) );
+			result.add( session );
+		}
+
+		for ( int i = 0; i < segment.size( ); i++ ) {
+			SleepLevel sl = new SleepLevel( );
+			sl.setValue( segment.getValue( i ) );
+			sl.setInterval( segment.getInterval( i ) );
+			result.get( segment.getSessionIndex( i ) ).getSleepLevels( ).add( sl );
+		}
+
+		for ( SleepSession session : result ) {
+			List<SleepLevel> levels = session.getSleepLevels( );
+			if ( !levels.isEmpty( ) ) {
+				session.setInterval(
+					new Interval(
+						levels.get( 0 ).getInterval( ).getStart( ),
+						levels.get( levels.size( ) - 1 ).getInterval( ).getEnd( )
+					)
+				);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * @param userId Fitbit user ID
+	 * @param date of activity logs
+	 * @return stored {@link StepCount}s, or null if none stored for date
+	 */
+	public List<StepCount> getStepCount( String userId, LocalDate date ) {
+
+		Segment segment = this.getSegment( userId, Series.STEPS, date );
+		if ( segment == null )
+			return null;
+
+		List<StepCount> result = new ArrayList<StepCount>( segment.size( ) );
+		for ( int i = 0; i < segment.size( ); i++ ) {
+			StepCount sc = new StepCount( );
+			sc.setValue( segment.getValue( i ) );
+			sc.setInterval( segment.getInterval( i ) );
+			result.add( sc );
+		}
+		return result;
+	}
+
+	/**
+	 * @param userId Fitbit user ID
+	 * @param date of weight measurements
+	 * @return stored {@link Weight}s, or null if none stored for date
+	 */
+	public List<Weight> getWeights( String userId, LocalDate date ) {
+
+		Segment segment = this.getSegment( userId, Series.WEIGHT, date );
+		if ( segment == null )
+			return null;
+
+		List<Weight> result = new ArrayList<Weight>( segment.size( ) );
+		for ( int i = 0; i < segment.size( ); i++ ) {
+			Weight w = new Weight( );
+			w.setDateTime( new DateTime( segment.getStartMillis( i ) ) );
+			w.setValue( segment.getWeightValue( i ) );
+			result.add( w );
+		}
+		return result;
+	}
+
+	public void putCaloriesBurned( String userId, LocalDate date, List<CalorieBurn> values ) {
+
+		List<String> dictionary = new ArrayList<String>( );
+		int[] tags = new int[ values.size( ) ];
+		for ( int i = 0; i < tags.length; i++ ) {
+			String name = values.get( i ).getActivityLevel( );
+			int tag = dictionary.indexOf( name );
+			if ( tag < 0 ) {
+				tag = dictionary.size( );
+				dictionary.add( name );
+			}
+			tags[ i ] = tag;
+		}
+
+		this.write( userId, Series.CALORIES, date, values, tags, dictionary, 0 );
+	}
+
+	public void putFloorCount( String userId, LocalDate date, List<FloorCount> values ) {
+		this.write( userId, Series.FLOORS, date, values, null, null, 0 );
+	}
+
+	public void putSleepSessions( String userId, LocalDate date, List<SleepSession> sessions ) {
+
+		List<SleepLevel> values = new ArrayList<SleepLevel>( );
+		List<Integer> sessionIndexes = new ArrayList<Integer>( );
+		for ( int s = 0; s < sessions.size( ); s++ ) {
+			for ( SleepLevel level : sessions.get( s ).getSleepLevels( ) ) {
+				values.add( level );
+				sessionIndexes.add( s );
+			}
+		}
+
+		int[] tags = new int[ values.size( ) ];
+		for ( int i = 0; i < tags.length; i++ )
+			tags[ i ] = sessionIndexes.get( i );
+
+		this.write( userId, Series.SLEEP, date, values, tags, null, sessions.size( ) );
+	}
+
+	public void putStepCount( String userId, LocalDate date, List<StepCount> values ) {
+		this.write( userId, Series.STEPS, date, values, null, null, 0 );
+	}
+
+	public void putWeights( String userId, LocalDate date, List<Weight> weights ) {
+
+		long[] starts = new long[ weights.size( ) ];
+		int[] values = new int[ weights.size( ) ];
+		for ( int i = 0; i < starts.length; i++ ) {
+			starts[ i ] = weights.get( i ).getDateTime( ).getMillis( );
+			values[ i ] = Float.floatToIntBits( weights.get( i ).getValue( ) );
+		}
+
+		this.write( userId, Series.WEIGHT, date, starts, new int[ starts.length ], values, null, null, 0 );
+	}
+
+	protected void write( String userId, Series series, LocalDate date, List<? extends ActivityValue<Integer>> values, int[] tags, List<String> dictionary, int groups ) {
+
+		long[] starts = new long[ values.size( ) ];
+		int[] durations = new int[ values.size( ) ];
+		int[] data = new int[ values.size( ) ];
+		for ( int i = 0; i < starts.length; i++ ) {
+			ActivityValue<Integer> value = values.get( i );
+			starts[ i ] = value.getInterval( ).getStartMillis( );
+			durations[ i ] = (int) value.getInterval( ).toDurationMillis( );
+			data[ i ] = value.getValue( );
+		}
+
+		this.write( userId, series, date, starts, durations, data, tags, dictionary, groups );
+	}
+
+	protected void write( String userId, Series series, LocalDate date, long[] starts, int[] durations, int[] values, int[] tags, List<String> dictionary, int groups ) {
+
+		List<byte[]> encodedTags = new ArrayList<byte[]>( );
+		int dictionarySize = 4;
+		if ( dictionary != null ) {
+			for ( String tag : dictionary ) {
+				byte[] encoded = ( tag != null ? tag : "" ).getBytes( UTF_8 );
+				encodedTags.add( encoded );
+				dictionarySize += 2 + encoded.length;
+			}
+		}
+
+		int dictionaryOffset = HEADER_SIZE + values.length * STRIDE;
+		ByteBuffer buffer = ByteBuffer.allocate( dictionaryOffset + dictionarySize );
+		buffer.putInt( MAGIC );
+		buffer.putInt( VERSION );
+		buffer.putInt( series.ordinal( ) );
+		buffer.putInt( values.length );
+		buffer.putInt( STRIDE );
+		buffer.putInt( dictionaryOffset );
+		buffer.putInt( groups );
+		buffer.position( HEADER_SIZE );
+
+		for ( int i = 0; i < values.length; i++ ) {
+			buffer.putLong( starts[ i ] );
+			buffer.putInt( durations[ i ] );
+			buffer.putInt( values[ i ] );
+			buffer.putInt( tags != null ? tags[ i ] : 0 );
+		}
+
+		buffer.putInt( encodedTags.size( ) );
+		for ( byte[] tag : encodedTags ) {
+			buffer.putShort( (short) tag.length );
+			buffer.put( tag );
+		}
+		buffer.flip( );
+
+		String key = key( userId, series );
+		synchronized ( this.lock( key ) ) {
+			try {
+				this.seriesFile( key, true ).append( day( date ), buffer, this.sync );
+			} catch( IOException e ) {
+				throw new FitbitExecutionException( e );
+			}
+		}
+		this.trim( );
+	}
+
+	private Object lock( String key ) {
+		return this.locks[ ( key.hashCode( ) & Integer.MAX_VALUE ) % this.locks.length ];
+	}
+
+	/**
+	 * Loads series file under its lock, so a load never races an append to the same file
+	 */
+	private SeriesFile seriesFile( String key, boolean create ) {
+
+		SeriesFile file = this.files.get( key );
+		if ( file == null ) {
+			synchronized ( this.lock( key ) ) {
+				file = this.files.get( key );
+				if ( file == null ) {
+
+					File data = new File( this.directory, key + ".seg" );
+					File index = new File( this.directory, key + ".idx" );
+					if ( !create && !index.isFile( ) )
+						return null;
+
+					try {
+						if ( create && !data.getParentFile( ).isDirectory( ) && !data.getParentFile( ).mkdirs( ) )
+							throw new IOException( "Unable to create " + data.getParentFile( ) );
+						file = new SeriesFile( data, index );
+					} catch( IOException e ) {
+						throw new FitbitExecutionException( e );
+					}
+					this.files.put( key, file );
+				}
+			}
+
+			if ( !create )
+				this.trim( );
+		}
+
+		file.lastAccess = this.clock.incrementAndGet( );
+		return file;
+	}
+
+	/**
+	 * Drops least recently used files beyond the limit, flushing their pending puts.
+	 * Called without holding any file lock.
+	 */
+	private void trim( ) {
+
+		while ( this.files.size( ) > this.maxOpenFiles ) {
+
+			String eldest = null;
+			long eldestAccess = Long.MAX_VALUE;
+			for ( Map.Entry<String,SeriesFile> entry : this.files.entrySet( ) ) {
+				if ( entry.getValue( ).lastAccess < eldestAccess ) {
+					eldest = entry.getKey( );
+					eldestAccess = entry.getValue( ).lastAccess;
+				}
+			}
+
+			if ( eldest == null )
+				return;
+
+			synchronized ( this.lock( eldest ) ) {
+				SeriesFile file = this.files.remove( eldest );
+				if ( file != null ) {
+					try {
+						file.flush( );
+					} catch( IOException e ) {
+						throw new FitbitExecutionException( e );
+					}
+				}
+			}
+		}
+	}
+
+	private static int day( LocalDate date ) {
+		return Days.daysBetween( EPOCH, date ).getDays( );
+	}
+
+	private static String key( String userId, Series series ) {
+		return userId + File.separator + series.name( ).toLowerCase( );
+	}
+}
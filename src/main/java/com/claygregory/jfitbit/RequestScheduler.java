@@ -0,0 +1,149 @@
+package com.claygregory.jfitbit;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admits requests to Fitbit by priority class. Interactive and backfill requests
+ * draw on separate concurrency budgets, so a long backfill can never occupy the
+ * slots needed by user-facing requests.
+ * 
+ * <p>Backfill requests are shed with a {@link FitbitRequestRejectedException} when
+ * too many are already waiting, or when one cannot start before its deadline.
+ * Interactive requests wait for a slot.</p>
+ * 
+ * <p>A scheduler may be shared by several {@link Fitbit} clients to apply one
+ * budget across many accounts.</p>
+ * 
+ * @author Clay Gregory
+ *
+ */
+public class RequestScheduler {
+
+	/**
+	 * Priority class of a request
+	 */
+	public static enum Priority {
+		BACKFILL, INTERACTIVE
+	}
+
+	/**
+	 * Slot held for the duration of a request, including consumption of the response
+	 */
+	public static class Permit {
+
+		private final AtomicBoolean released = new AtomicBoolean( );
+
+		private final Semaphore semaphore;
+
+		private Permit( Semaphore semaphore ) {
+			this.semaphore = semaphore;
+		}
+
+		/**
+		 * Returns the slot to the scheduler. Repeated calls have no effect.
+		 */
+		public void release( ) {
+			if ( this.released.compareAndSet( false, true ) )
+				this.semaphore.release( );
+		}
+	}
+
+	public static final int DEFAULT_BACKFILL_CONCURRENCY = 2;
+
+	public static final long DEFAULT_BACKFILL_DEADLINE_MILLIS = 60000;
+
+	public static final int DEFAULT_BACKFILL_QUEUE_LIMIT = 64;
+
+	public static final int DEFAULT_INTERACTIVE_CONCURRENCY = 4;
+
+	private final int backfillConcurrency;
+
+	private final long backfillDeadlineMillis;
+
+	private final int backfillQueueLimit;
+
+	private final Semaphore backfillSlots;
+
+	private final AtomicInteger backfillWaiting = new AtomicInteger( );
+
+	private final int interactiveConcurrency;
+
+	private final Semaphore interactiveSlots;
+
+	public RequestScheduler( ) {
+		this( DEFAULT_INTERACTIVE_CONCURRENCY, DEFAULT_BACKFILL_CONCURRENCY, DEFAULT_BACKFILL_QUEUE_LIMIT, DEFAULT_BACKFILL_DEADLINE_MILLIS );
+	}
+
+	/**
+	 * @param interactiveConcurrency maximum concurrent interactive requests
+	 * @param backfillConcurrency maximum concurrent backfill requests
+	 * @param backfillQueueLimit maximum backfill requests waiting for a slot before further requests are shed
+	 * @param backfillDeadlineMillis maximum time a backfill request waits for a slot before being shed
+	 */
+	public RequestScheduler( int interactiveConcurrency, int backfillConcurrency, int backfillQueueLimit, long backfillDeadlineMillis ) {
+
+		if ( interactiveConcurrency <= 0 || backfillConcurrency <= 0 )
+			throw new IllegalArgumentException( "concurrency must be positive" );
+
+		this.interactiveConcurrency = interactiveConcurrency;
+		this.backfillConcurrency = backfillConcurrency;
+		this.backfillQueueLimit = backfillQueueLimit;
+		this.backfillDeadlineMillis = backfillDeadlineMillis;
+		this.interactiveSlots = new Semaphore( interactiveConcurrency, true );
+		this.backfillSlots = new Semaphore( backfillConcurrency, true );
+	}
+
+	/**
+	 * Waits for a slot in the given priority class
+	 * 
+	 * @param priority of request
+	 * @return Permit to release once the response is consumed
+	 * @throws FitbitRequestRejectedException if a backfill request is shed
+	 */
+	public Permit acquire( Priority priority ) {
+		try {
+			if ( priority == Priority.INTERACTIVE ) {
+				this.interactiveSlots.acquire( );
+				return new Permit( this.interactiveSlots );
+			}
+
+			if ( this.backfillSlots.tryAcquire( ) )
+				return new Permit( this.backfillSlots );
+
+			if ( this.backfillWaiting.incrementAndGet( ) > this.backfillQueueLimit ) {
+				this.backfillWaiting.decrementAndGet( );
+				throw new FitbitRequestRejectedException( );
+			}
+
+			try {
+				if ( !this.backfillSlots.tryAcquire( this.backfillDeadlineMillis, TimeUnit.MILLISECONDS ) )
+					throw new FitbitRequestRejectedException( );
+				return new Permit( this.backfillSlots );
+			} finally {
+				this.backfillWaiting.decrementAndGet( );
+			}
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread( ).interrupt( );
+			throw new FitbitExecutionException( e );
+		}
+	}
+
+	/**
+	 * @param priority class
+	 * @return maximum concurrent requests in priority class
+	 */
+	public int getConcurrency( Priority priority ) {
+		return priority == Priority.INTERACTIVE ? this.interactiveConcurrency : this.backfillConcurrency;
+	}
+
+	/**
+	 * @return combined concurrency across priority classes, used to size connection pools
+	 */
+	public int getConcurrency( ) {
+		return this.interactiveConcurrency + this.backfillConcurrency;
+	}
+}
@@ -0,0 +1,314 @@
+package com.claygregory.jfitbit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+
+/**
+ * Helpers for consuming response entities as streams rather than buffering
+ * the full body into a String. Decode and scan buffers are reused per thread.
+ *
+ * @author Clay Gregory
+ *
+ */
+final class ResponseStreams {
+
+	/**
+	 * Decodes a byte stream through a byte buffer and decoder checked out from
+	 * the current thread, returning them on close
+	 */
+	private static class DecodingReader extends Reader {
+
+		private byte[] buffer;
+
+		private final ByteBuffer bytes;
+
+		private final CharsetDecoder decoder;
+
+		private boolean eof;
+
+		private boolean flushed;
+
+		private final InputStream in;
+
+		private final char[] pair = new char[ 2 ];
+
+		private int pending = -1;
+
+		private DecodingReader( InputStream in, Charset charset ) {
+			this.in = in;
+			this.buffer = checkout( BYTE_BUFFERS );
+			this.bytes = ByteBuffer.wrap( this.buffer );
+			this.bytes.limit( 0 );
+			this.decoder = DEFAULT_CHARSET.equals( charset ) ? checkout( DECODERS ) : newDecoder( charset );
+			this.decoder.reset( );
+		}
+
+		@Override
+		public void close( ) throws IOException {
+			if ( this.buffer != null ) {
+				BYTE_BUFFERS.set( this.buffer );
+				if ( DEFAULT_CHARSET.equals( this.decoder.charset( ) ) )
+					DECODERS.set( this.decoder );
+				this.buffer = null;
+			}
+			this.in.close( );
+		}
+
+		@Override
+		public int read( char[] cbuf, int off, int len ) throws IOException {
+
+			if ( this.buffer == null )
+				throw new IOException( "Stream closed" );
+
+			if ( len == 0 )
+				return 0;
+
+			if ( this.pending >= 0 ) {
+				cbuf[ off ] = (char) this.pending;
+				this.pending = -1;
+				return 1;
+			}
+
+			//a surrogate pair can't be decoded into a single char, hold the low surrogate back
+			if ( len == 1 ) {
+				int read = this.read( this.pair, 0, 2 );
+				if ( read <= 0 )
+					return read;
+				cbuf[ off ] = this.pair[ 0 ];
+				if ( read == 2 )
+					this.pending = this.pair[ 1 ];
+				return 1;
+			}
+
+			if ( this.flushed )
+				return -1;
+
+			CharBuffer out = CharBuffer.wrap( cbuf, off, len );
+			while ( true ) {
+
+				CoderResult result = this.decoder.decode( this.bytes, out, this.eof );
+				if ( result.isError( ) )
+					result.throwException( );
+
+				if ( result.isOverflow( ) )
+					break;
+
+				if ( this.eof ) {
+					this.decoder.flush( out );
+					this.flushed = true;
+					break;
+				}
+
+				//return what's decoded rather than block for more input
+				if ( out.position( ) > off )
+					break;
+
+				this.bytes.compact( );
+				int read = this.in.read( this.buffer, this.bytes.position( ), this.bytes.remaining( ) );
+				if ( read == -1 )
+					this.eof = true;
+				else
+					this.bytes.position( this.bytes.position( ) + read );
+				this.bytes.flip( );
+			}
+
+			int read = out.position( ) - off;
+			return read == 0 && this.flushed ? -1 : read;
+		}
+	}
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final Charset DEFAULT_CHARSET = Charset.forName( "UTF-8" );
+
+	private static final ThreadLocal<byte[]> BYTE_BUFFERS = new ThreadLocal<byte[]>( ) {
+		@Override
+		protected byte[] initialValue( ) {
+			return new byte[ BUFFER_SIZE ];
+		}
+	};
+
+	private static final ThreadLocal<CharsetDecoder> DECODERS = new ThreadLocal<CharsetDecoder>( ) {
+		@Override
+		protected CharsetDecoder initialValue( ) {
+			return newDecoder( DEFAULT_CHARSET );
+		}
+	};
+
+	private static final ThreadLocal<char[]> CHAR_BUFFERS = new ThreadLocal<char[]>( ) {
+		@Override
+		protected char[] initialValue( ) {
+			return new char[ BUFFER_SIZE ];
+		}
+	};
+
+	/**
+	 * Reads and discards remaining entity content, releasing the connection
+	 *
+	 * @param entity of response, may be null
+	 * @throws IOException
+	 */
+	static void consume( HttpEntity entity ) throws IOException {
+
+		if ( entity == null )
+			return;
+
+		InputStream in = entity.getContent( );
+		if ( in == null )
+			return;
+
+		byte[] buffer = checkout( BYTE_BUFFERS );
+		try {
+			while ( in.read( buffer ) != -1 ) {
+				//discard
+			}
+		} finally {
+			BYTE_BUFFERS.set( buffer );
+			in.close( );
+		}
+	}
+
+	/**
+	 * Scans entity for literal text, stopping at the first occurrence
+	 *
+	 * @param entity of response
+	 * @param text to find
+	 * @return true if found
+	 * @throws IOException
+	 */
+	static boolean contains( HttpEntity entity, String text ) throws IOException {
+		return !scan( entity, Pattern.compile( Pattern.quote( text ) ), text.length( ), true ).isEmpty( );
+	}
+
+	/**
+	 * Scans entity for the first match of pattern
+	 *
+	 * @param entity of response
+	 * @param pattern with a single capturing group
+	 * @param maxMatchLength longest expected match, bounds the scan window
+	 * @return first captured group, or null if not matched
+	 * @throws IOException
+	 */
+	static String find( HttpEntity entity, Pattern pattern, int maxMatchLength ) throws IOException {
+		List<String> matches = scan( entity, pattern, maxMatchLength, true );
+		return matches.isEmpty( ) ? null : matches.get( 0 );
+	}
+
+	/**
+	 * Scans entity for all matches of pattern
+	 *
+	 * @param entity of response
+	 * @param pattern with a single capturing group
+	 * @param maxMatchLength longest expected match, bounds the scan window
+	 * @return captured groups in order of appearance
+	 * @throws IOException
+	 */
+	static List<String> findAll( HttpEntity entity, Pattern pattern, int maxMatchLength ) throws IOException {
+		return scan( entity, pattern, maxMatchLength, false );
+	}
+
+	/**
+	 * Opens a character stream over entity content, decoded with the charset
+	 * declared by the response (UTF-8 if none)
+	 *
+	 * @param entity of response
+	 * @return Reader over content; closing releases the connection
+	 * @throws IOException
+	 */
+	static Reader reader( HttpEntity entity ) throws IOException {
+
+		Charset charset = null;
+		try {
+			charset = ContentType.getOrDefault( entity ).getCharset( );
+		} catch( RuntimeException e ) {
+			//unsupported or malformed content type, fall through to default
+		}
+
+		return new DecodingReader( entity.getContent( ), charset != null ? charset : DEFAULT_CHARSET );
+	}
+
+	/**
+	 * Takes the current thread's instance, so a nested use on the same thread
+	 * gets a fresh one rather than sharing it
+	 */
+	private static <T> T checkout( ThreadLocal<T> pool ) {
+		T value = pool.get( );
+		pool.remove( );
+		return value;
+	}
+
+	private static CharsetDecoder newDecoder( Charset charset ) {
+		return charset.newDecoder( )
+			.onMalformedInput( CodingErrorAction.REPLACE )
+			.onUnmappableCharacter( CodingErrorAction.REPLACE );
+	}
+
+	private static List<String> scan( HttpEntity entity, Pattern pattern, int maxMatchLength, boolean firstOnly ) throws IOException {
+
+		List<String> matches = new ArrayList<String>( );
+		if ( entity == null )
+			return matches;
+
+		Reader reader = reader( entity );
+		char[] buffer = null;
+		try {
+			buffer = checkout( CHAR_BUFFERS );
+			StringBuilder window = new StringBuilder( BUFFER_SIZE + maxMatchLength );
+			Matcher m = pattern.matcher( window );
+			int searchFrom = 0;
+			boolean eof = false;
+
+			while ( !eof ) {
+
+				int read = reader.read( buffer );
+				if ( read == -1 )
+					eof = true;
+				else
+					window.append( buffer, 0, read );
+
+				m.reset( window );
+				while ( searchFrom <= window.length( ) && m.find( searchFrom ) ) {
+
+					//a match touching the end of the window may continue in the next read
+					if ( !eof && m.end( ) == window.length( ) )
+						break;
+
+					matches.add( m.groupCount( ) > 0 ? m.group( 1 ) : m.group( ) );
+					if ( firstOnly )
+						return matches;
+
+					searchFrom = Math.max( m.end( ), m.start( ) + 1 );
+				}
+
+				int discard = Math.max( Math.min( searchFrom, window.length( ) ), window.length( ) - maxMatchLength );
+				if ( discard > 0 ) {
+					window.delete( 0, discard );
+					searchFrom = Math.max( 0, searchFrom - discard );
+				}
+			}
+
+			return matches;
+
+		} finally {
+			if ( buffer != null )
+				CHAR_BUFFERS.set( buffer );
+			reader.close( );
+		}
+	}
+
+	private ResponseStreams( ) { }
+}
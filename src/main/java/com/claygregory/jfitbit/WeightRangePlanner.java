@@ -0,0 +1,328 @@
+package com.claygregory.jfitbit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+
+/**
+ * Splits long weight queries into chunks fetched concurrently. Chunk length adapts
+ * to the latency and number of measurements observed in previous responses, aiming
+ * for responses of bounded size and duration.
+ * 
+ * <p>Fetched calendar months that have ended are cached, so repeated queries over
+ * history only fetch months not seen recently. The cache is bounded, and months expire
+ * so measurements entered late are picked up; {@link #invalidate(String)} drops a
+ * user's months immediately. Cached weights are copied in and out, so callers may
+ * modify the weights they are given.</p>
+ * 
+ * @author Clay Gregory
+ *
+ */
+public class WeightRangePlanner {
+
+	private static class CachedMonth {
+
+		private final long expires;
+
+		private final List<Weight> weights;
+
+		private CachedMonth( List<Weight> weights, long expires ) {
+			this.weights = weights;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Contiguous date range fetched with a single request
+	 */
+	public static class Chunk {
+
+		private final LocalDate from;
+
+		private final LocalDate to;
+
+		public Chunk( LocalDate from, LocalDate to ) {
+			this.from = from;
+			this.to = to;
+		}
+
+		public LocalDate getFrom( ) {
+			return this.from;
+		}
+
+		public LocalDate getTo( ) {
+			return this.to;
+		}
+	}
+
+	public static final long CACHE_TTL_MILLIS = 60 * 60 * 1000;
+
+	public static final int DEFAULT_CHUNK_DAYS = 90;
+
+	public static final int MAX_CACHED_MONTHS = 4096;
+
+	public static final int MAX_CHUNK_DAYS = 730;
+
+	public static final int MIN_CHUNK_DAYS = 31;
+
+	private static final double SMOOTHING = 0.3;
+
+	private static final long TARGET_MILLIS = 5000;
+
+	private static final int TARGET_POINTS = 500;
+
+	private final Map<String,CachedMonth> cache = new LinkedHashMap<String,CachedMonth>( 16, 0.75f, true ) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<String,CachedMonth> eldest ) {
+			return this.size( ) > MAX_CACHED_MONTHS;
+		}
+	};
+
+	private final ThreadPoolExecutor executor;
+
+	private double millisPerDay = -1;
+
+	private double pointsPerDay = -1;
+
+	/**
+	 * @param concurrency maximum chunks fetched at once
+	 */
+	public WeightRangePlanner( int concurrency ) {
+		this.executor = new ThreadPoolExecutor( concurrency, concurrency, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>( ), new ThreadFactory( ) {
+			public Thread newThread( Runnable r ) {
+				Thread t = new Thread( r, "jfitbit-weight" );
+				t.setDaemon( true );
+				return t;
+			}
+		} );
+		this.executor.allowCoreThreadTimeOut( true );
+	}
+
+	/**
+	 * Fetches weights over range, serving completed months from cache and fetching
+	 * the remainder in concurrent chunks
+	 * 
+	 * @param fitbit client issuing requests
+	 * @param from date of weight interval start
+	 * @param to date of weight interval end
+	 * @return {@link Weight}s ordered by time, without duplicates; empty if from is after to
+	 */
+	public List<Weight> getWeights( final Fitbit fitbit, LocalDate from, LocalDate to ) {
+
+		List<Weight> result = new ArrayList<Weight>( );
+		if ( from.isAfter( to ) )
+			return result;
+
+		List<Chunk> chunks = new ArrayList<Chunk>( );
+		this.plan( fitbit.getUserId( ), from, to, result, chunks );
+
+		if ( chunks.size( ) == 1 && result.isEmpty( ) ) {
+			result.addAll( this.fetch( fitbit, chunks.get( 0 ) ) );
+		} else {
+			List<Future<List<Weight>>> futures = new ArrayList<Future<List<Weight>>>( chunks.size( ) );
+			for ( final Chunk chunk : chunks ) {
+				futures.add( this.executor.submit( new Callable<List<Weight>>( ) {
+					public List<Weight> call( ) {
+						return fetch( fitbit, chunk );
+					}
+				} ) );
+			}
+
+			try {
+				for ( Future<List<Weight>> future : futures )
+					result.addAll( future.get( ) );
+			} catch( ExecutionException e ) {
+				if ( e.getCause( ) instanceof RuntimeException )
+					throw (RuntimeException) e.getCause( );
+				throw new FitbitExecutionException( e.getCause( ) );
+			} catch( InterruptedException e ) {
+				Thread.currentThread( ).interrupt( );
+				throw new FitbitExecutionException( e );
+			} finally {
+				for ( Future<List<Weight>> future : futures )
+					future.cancel( true );
+			}
+		}
+
+		return merge( result );
+	}
+
+	/**
+	 * @return chunk length in days for the next plan
+	 */
+	public synchronized int getChunkDays( ) {
+
+		if ( this.millisPerDay <= 0 )
+			return DEFAULT_CHUNK_DAYS;
+
+		double days = TARGET_MILLIS / this.millisPerDay;
+		if ( this.pointsPerDay > 0 )
+			days = Math.min( days, TARGET_POINTS / this.pointsPerDay );
+
+		return (int) Math.max( MIN_CHUNK_DAYS, Math.min( MAX_CHUNK_DAYS, days ) );
+	}
+
+	/**
+	 * Drops cached months of user, such as after weights are logged retroactively
+	 * 
+	 * @param userId Fitbit user ID
+	 */
+	public void invalidate( String userId ) {
+		String prefix = userId + ":";
+		synchronized ( this.cache ) {
+			for ( Iterator<String> keys = this.cache.keySet( ).iterator( ); keys.hasNext( ); )
+				if ( keys.next( ).startsWith( prefix ) )
+					keys.remove( );
+		}
+	}
+
+	public void shutdown( ) {
+		this.executor.shutdownNow( );
+	}
+
+	protected List<Weight> fetch( Fitbit fitbit, Chunk chunk ) {
+
+		//admission wait is excluded, it reflects load rather than chunk size
+		Fitbit.WeightResponseHandler response = fitbit.fetchWeights( chunk.getFrom( ), chunk.getTo( ) );
+		List<Weight> weights = response.getWeights( );
+		this.observe( Days.daysBetween( chunk.getFrom( ), chunk.getTo( ) ).getDays( ) + 1, response.getExchangeMillis( ), weights.size( ) );
+
+		LocalDate today = LocalDate.now( );
+		for ( LocalDate month = chunk.getFrom( ).withDayOfMonth( 1 ); !month.isAfter( chunk.getTo( ) ); month = month.plusMonths( 1 ) ) {
+			LocalDate monthEnd = month.plusMonths( 1 ).minusDays( 1 );
+			if ( !month.isBefore( chunk.getFrom( ) ) && !monthEnd.isAfter( chunk.getTo( ) ) && monthEnd.isBefore( today ) ) {
+				List<Weight> monthWeights = new ArrayList<Weight>( );
+				for ( Weight w : weights ) {
+					LocalDate day = w.getDateTime( ).toLocalDate( );
+					if ( !day.isBefore( month ) && !day.isAfter( monthEnd ) )
+						monthWeights.add( copy( w ) );
+				}
+				CachedMonth cached = new CachedMonth( monthWeights, System.currentTimeMillis( ) + CACHE_TTL_MILLIS );
+				synchronized ( this.cache ) {
+					this.cache.put( key( fitbit.getUserId( ), month ), cached );
+				}
+			}
+		}
+
+		return weights;
+	}
+
+	protected synchronized void observe( int days, long millis, int points ) {
+
+		//an empty range says nothing about cost per day
+		if ( days <= 0 || millis < 0 )
+			return;
+
+		double observedMillis = (double) millis / days;
+		double observedPoints = (double) points / days;
+
+		if ( this.millisPerDay < 0 ) {
+			this.millisPerDay = observedMillis;
+			this.pointsPerDay = observedPoints;
+		} else {
+			this.millisPerDay += SMOOTHING * ( observedMillis - this.millisPerDay );
+			this.pointsPerDay += SMOOTHING * ( observedPoints - this.pointsPerDay );
+		}
+	}
+
+	/**
+	 * Splits range into month segments, collecting cached months into result and
+	 * grouping the remaining segments into chunks
+	 */
+	protected void plan( String userId, LocalDate from, LocalDate to, List<Weight> result, List<Chunk> chunks ) {
+
+		int chunkDays = this.getChunkDays( );
+		LocalDate chunkFrom = null;
+		LocalDate chunkTo = null;
+
+		for ( LocalDate month = from.withDayOfMonth( 1 ); !month.isAfter( to ); month = month.plusMonths( 1 ) ) {
+
+			LocalDate segmentFrom = month.isBefore( from ) ? from : month;
+			LocalDate monthEnd = month.plusMonths( 1 ).minusDays( 1 );
+			LocalDate segmentTo = monthEnd.isAfter( to ) ? to : monthEnd;
+
+			List<Weight> cached = segmentFrom.equals( month ) && segmentTo.equals( monthEnd ) ? this.getCached( key( userId, month ) ) : null;
+			if ( cached != null ) {
+				for ( Weight w : cached )
+					result.add( copy( w ) );
+				if ( chunkFrom != null ) {
+					chunks.add( new Chunk( chunkFrom, chunkTo ) );
+					chunkFrom = null;
+				}
+				continue;
+			}
+
+			if ( chunkFrom == null )
+				chunkFrom = segmentFrom;
+			chunkTo = segmentTo;
+
+			if ( Days.daysBetween( chunkFrom, chunkTo ).getDays( ) + 1 >= chunkDays ) {
+				chunks.add( new Chunk( chunkFrom, chunkTo ) );
+				chunkFrom = null;
+			}
+		}
+
+		if ( chunkFrom != null )
+			chunks.add( new Chunk( chunkFrom, chunkTo ) );
+	}
+
+	private List<Weight> getCached( String key ) {
+		synchronized ( this.cache ) {
+			CachedMonth cached = this.cache.get( key );
+			if ( cached == null )
+				return null;
+			if ( cached.expires <= System.currentTimeMillis( ) ) {
+				this.cache.remove( key );
+				return null;
+			}
+			return cached.weights;
+		}
+	}
+
+	private static Weight copy( Weight weight ) {
+		Weight copy = new Weight( );
+		copy.setDateTime( weight.getDateTime( ) );
+		copy.setValue( weight.getValue( ) );
+		return copy;
+	}
+
+	private static String key( String userId, LocalDate month ) {
+		return userId + ":" + month;
+	}
+
+	static List<Weight> merge( List<Weight> weights ) {
+
+		Collections.sort( weights, new Comparator<Weight>( ) {
+			public int compare( Weight a, Weight b ) {
+				long am = a.getDateTime( ).getMillis( );
+				long bm = b.getDateTime( ).getMillis( );
+				return am < bm ? -1 : ( am == bm ? 0 : 1 );
+			}
+		} );
+
+		List<Weight> merged = new ArrayList<Weight>( weights.size( ) );
+		Weight previous = null;
+		for ( Weight w : weights ) {
+			if ( previous == null || previous.getDateTime( ).getMillis( ) != w.getDateTime( ).getMillis( ) || previous.getValue( ) != w.getValue( ) )
+				merged.add( w );
+			previous = w;
+		}
+		return merged;
+	}
+}
@@ -0,0 +1,116 @@
+package com.claygregory.jfitbit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+public class ActivityAnalyticsTest extends TestCase {
+
+	public void testComputeAllKeepsOrder( ) {
+
+		ExecutorService executor = Executors.newFixedThreadPool( 3 );
+		try {
+			List<int[]> series = Arrays.asList( new int[] { 1, 2 }, new int[ 0 ], new int[] { 5 }, new int[] { 4, 4, 4 } );
+			List<Long> sums = ActivityAnalytics.computeAll( series, new ActivityAnalytics.Statistic<Long>( ) {
+				public Long compute( int[] values ) {
+					return ActivityAnalytics.sum( values );
+				}
+			}, executor );
+			assertEquals( Arrays.asList( 3L, 0L, 5L, 12L ), sums );
+		} finally {
+			executor.shutdownNow( );
+		}
+	}
+
+	public void testComputeAllWrapsFailure( ) {
+
+		ExecutorService executor = Executors.newSingleThreadExecutor( );
+		try {
+			ActivityAnalytics.computeAll( Arrays.asList( new int[ 0 ] ), new ActivityAnalytics.Statistic<Integer>( ) {
+				public Integer compute( int[] values ) {
+					throw new IllegalStateException( "failed" );
+				}
+			}, executor );
+			fail( );
+		} catch( FitbitExecutionException e ) {
+			assertTrue( e.getCause( ) instanceof IllegalStateException );
+		} finally {
+			executor.shutdownNow( );
+		}
+	}
+
+	public void testCountActive( ) {
+		assertEquals( 0, ActivityAnalytics.countActive( new int[ 0 ], 1 ) );
+		assertEquals( 2, ActivityAnalytics.countActive( new int[] { 0, 9, 10, 11 }, 10 ) );
+		assertEquals( 4, ActivityAnalytics.countActive( new int[] { 0, 9, 10, 11 }, 0 ) );
+	}
+
+	public void testMovingAverage( ) {
+		double[] averages = ActivityAnalytics.movingAverage( new int[] { 1, 2, 3, 4, 5 }, 2 );
+		assertTrue( Arrays.equals( new double[] { 1.5, 2.5, 3.5, 4.5 }, averages ) );
+		assertTrue( Arrays.equals( new double[] { 3 }, ActivityAnalytics.movingAverage( new int[] { 1, 2, 3, 4, 5 }, 5 ) ) );
+	}
+
+	public void testMovingAverageWindowLargerThanSeries( ) {
+		assertEquals( 0, ActivityAnalytics.movingAverage( new int[] { 1, 2 }, 3 ).length );
+		assertEquals( 0, ActivityAnalytics.movingAverage( new int[ 0 ], 1 ).length );
+	}
+
+	public void testMovingAverageRejectsEmptyWindow( ) {
+		try {
+			ActivityAnalytics.movingAverage( new int[] { 1 }, 0 );
+			fail( );
+		} catch( IllegalArgumentException e ) {
+			//expected
+		}
+	}
+
+	public void testPercentile( ) {
+
+		int[] values = { 50, 10, 40, 20, 30 };
+		assertEquals( 10, ActivityAnalytics.percentile( values, 0 ) );
+		assertEquals( 10, ActivityAnalytics.percentile( values, 20 ) );
+		assertEquals( 30, ActivityAnalytics.percentile( values, 50 ) );
+		assertEquals( 50, ActivityAnalytics.percentile( values, 100 ) );
+
+		//input is left unsorted
+		assertTrue( Arrays.equals( new int[] { 50, 10, 40, 20, 30 }, values ) );
+	}
+
+	public void testPercentileOfEmptySeries( ) {
+		assertEquals( 0, ActivityAnalytics.percentile( new int[ 0 ], 50 ) );
+	}
+
+	public void testPercentileRejectsOutOfRange( ) {
+		for ( double percentile : new double[] { -1, 100.5 } ) {
+			try {
+				ActivityAnalytics.percentile( new int[] { 1 }, percentile );
+				fail( );
+			} catch( IllegalArgumentException e ) {
+				//expected
+			}
+		}
+	}
+
+	public void testSum( ) {
+		assertEquals( 0, ActivityAnalytics.sum( new int[ 0 ] ) );
+		assertEquals( 3L * Integer.MAX_VALUE, ActivityAnalytics.sum( new int[] { Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE } ) );
+	}
+
+	public void testSumByLevelSkipsCodesOutOfRange( ) {
+		long[] totals = ActivityAnalytics.sumByLevel( new int[] { 1, 2, 4, 8, 16 }, new int[] { 0, 1, 0, -1, 3 }, 2 );
+		assertTrue( Arrays.equals( new long[] { 5, 2 }, totals ) );
+	}
+
+	public void testSumByLevelRejectsMismatchedLengths( ) {
+		try {
+			ActivityAnalytics.sumByLevel( new int[] { 1 }, new int[ 0 ], 1 );
+			fail( );
+		} catch( IllegalArgumentException e ) {
+			//expected
+		}
+	}
+}
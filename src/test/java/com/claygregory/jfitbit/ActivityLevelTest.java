@@ -0,0 +1,57 @@
+package com.claygregory.jfitbit;
+
+import junit.framework.TestCase;
+
+public class ActivityLevelTest extends TestCase {
+
+	public void testParsesReportedNames( ) {
+		assertEquals( ActivityLevel.SEDENTARY, ActivityLevel.parse( "sedentary" ) );
+		assertEquals( ActivityLevel.LIGHTLY_ACTIVE, ActivityLevel.parse( "lightly" ) );
+		assertEquals( ActivityLevel.FAIRLY_ACTIVE, ActivityLevel.parse( "fairly" ) );
+		assertEquals( ActivityLevel.FAIRLY_ACTIVE, ActivityLevel.parse( "moderately" ) );
+		assertEquals( ActivityLevel.VERY_ACTIVE, ActivityLevel.parse( "very" ) );
+	}
+
+	public void testParsesConstantNamesIgnoringCase( ) {
+		for ( ActivityLevel level : ActivityLevel.values( ) ) {
+			if ( level == ActivityLevel.UNKNOWN )
+				continue;
+			assertEquals( level, ActivityLevel.parse( level.name( ) ) );
+			assertEquals( level, ActivityLevel.parse( level.name( ).toLowerCase( ) ) );
+			assertEquals( level, ActivityLevel.parse( level.getReportedName( ) ) );
+			assertEquals( level, ActivityLevel.parse( level.getReportedName( ).toUpperCase( ) ) );
+		}
+		assertEquals( ActivityLevel.SEDENTARY, ActivityLevel.parse( "Sedentary" ) );
+	}
+
+	public void testRejectsOtherNames( ) {
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( null ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "s" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "sleeping" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "light" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "vary" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "mostly" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "fairly active" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( "UNKNOWN" ) );
+		assertEquals( ActivityLevel.UNKNOWN, ActivityLevel.parse( " very" ) );
+	}
+
+	public void testCalorieBurnKeepsReportedValue( ) {
+
+		String[] reported = { "sedentary", "lightly", "very", "VERY", "fairly", "unlisted", null };
+		ActivityLevel[] parsed = { ActivityLevel.SEDENTARY, ActivityLevel.LIGHTLY_ACTIVE, ActivityLevel.VERY_ACTIVE,
+			ActivityLevel.VERY_ACTIVE, ActivityLevel.FAIRLY_ACTIVE, ActivityLevel.UNKNOWN, ActivityLevel.UNKNOWN };
+
+		for ( int i = 0; i < reported.length; i++ ) {
+			CalorieBurn cb = new CalorieBurn( );
+			cb.setActivityLevel( reported[ i ] );
+			assertEquals( reported[ i ], cb.getActivityLevel( ) );
+			assertEquals( parsed[ i ], cb.getLevel( ) );
+		}
+
+		CalorieBurn empty = new CalorieBurn( );
+		assertNull( empty.getActivityLevel( ) );
+		assertEquals( ActivityLevel.UNKNOWN, empty.getLevel( ) );
+	}
+}
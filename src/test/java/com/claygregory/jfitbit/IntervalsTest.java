@@ -0,0 +1,79 @@
+package com.claygregory.jfitbit;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Interval;
+
+public class IntervalsTest extends TestCase {
+
+	private static final DateTimeZone ZONE = DateTimeZone.forID( "America/Chicago" );
+
+	public void testSharesIntervalsOnGrid( ) {
+
+		DateTime start = new DateTime( 2016, 3, 14, 0, 5, ZONE );
+		Interval interval = Intervals.get( start, 5 );
+
+		assertEquals( start, interval.getStart( ) );
+		assertEquals( start.plusMinutes( 5 ).minusSeconds( 1 ), interval.getEnd( ) );
+		assertSame( interval, Intervals.get( new DateTime( 2016, 3, 14, 0, 5, ZONE ), 5 ) );
+		assertSame( interval, Intervals.day( start, 5 ).get( start ) );
+	}
+
+	public void testSeparatesSizesAndZones( ) {
+
+		DateTime start = new DateTime( 2016, 3, 14, 0, 15, ZONE );
+		Interval interval = Intervals.get( start, 5 );
+
+		Interval wider = Intervals.get( start, 15 );
+		assertNotSame( interval, wider );
+		assertEquals( start.plusMinutes( 15 ).minusSeconds( 1 ), wider.getEnd( ) );
+
+		DateTime utc = new DateTime( 2016, 3, 14, 0, 15, DateTimeZone.UTC );
+		Interval other = Intervals.get( utc, 5 );
+		assertNotSame( interval, other );
+		assertEquals( DateTimeZone.UTC, other.getStart( ).getZone( ) );
+		assertSame( other, Intervals.get( utc, 5 ) );
+	}
+
+	public void testOffGridStartGetsNewInstance( ) {
+
+		DateTime start = new DateTime( 2016, 3, 14, 0, 7, ZONE );
+		Interval interval = Intervals.get( start, 5 );
+
+		assertEquals( start, interval.getStart( ) );
+		assertEquals( start.plusMinutes( 5 ).minusSeconds( 1 ), interval.getEnd( ) );
+		assertNotSame( interval, Intervals.get( start, 5 ) );
+		assertEquals( interval, Intervals.get( start, 5 ) );
+	}
+
+	public void testDayContains( ) {
+
+		DateTime start = new DateTime( 2016, 3, 14, 12, 0, ZONE );
+		Intervals.Day day = Intervals.day( start, 1 );
+
+		assertTrue( day.contains( start.withTimeAtStartOfDay( ), 1 ) );
+		assertTrue( day.contains( new DateTime( 2016, 3, 14, 23, 59, ZONE ), 1 ) );
+		assertFalse( day.contains( new DateTime( 2016, 3, 15, 0, 0, ZONE ), 1 ) );
+		assertFalse( day.contains( new DateTime( 2016, 3, 13, 23, 59, ZONE ), 1 ) );
+		assertFalse( day.contains( start, 5 ) );
+		assertFalse( day.contains( start.withZone( DateTimeZone.UTC ), 1 ) );
+
+		//a day outside the Day still resolves, just without sharing
+		DateTime next = new DateTime( 2016, 3, 15, 0, 0, ZONE );
+		assertEquals( next, day.get( next ).getStart( ) );
+		assertSame( Intervals.get( next, 1 ), Intervals.get( next, 1 ) );
+	}
+
+	public void testShortDayAcrossDaylightSaving( ) {
+
+		//2016-03-13 in Chicago has 23 hours
+		DateTime last = new DateTime( 2016, 3, 13, 23, 45, ZONE );
+		Interval interval = Intervals.get( last, 15 );
+
+		assertEquals( last, interval.getStart( ) );
+		assertSame( interval, Intervals.get( last, 15 ) );
+		assertSame( Intervals.get( last.withTimeAtStartOfDay( ), 15 ), Intervals.get( new DateTime( 2016, 3, 13, 0, 0, ZONE ), 15 ) );
+	}
+}
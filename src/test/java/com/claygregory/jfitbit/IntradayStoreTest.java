@@ -0,0 +1,318 @@
+package com.claygregory.jfitbit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.joda.time.LocalDate;
+
+import com.claygregory.jfitbit.IntradayStore.Series;
+import com.claygregory.jfitbit.SleepSession.SleepLevel;
+
+public class IntradayStoreTest extends TestCase {
+
+	private static final LocalDate DATE = new LocalDate( 2016, 3, 14 );
+
+	private static final int DEFAULT_OPEN_FILES = IntradayStore.DEFAULT_MAX_OPEN_FILES;
+
+	private static final String USER_ID = "2ABC9X";
+
+	private File directory;
+
+	@Override
+	protected void setUp( ) throws IOException {
+		this.directory = File.createTempFile( "jfitbit-store", "" );
+		assertTrue( this.directory.delete( ) );
+		assertTrue( this.directory.mkdir( ) );
+	}
+
+	@Override
+	protected void tearDown( ) {
+		delete( this.directory );
+	}
+
+	public void testCaloriesBurnedRoundTrip( ) {
+
+		List<CalorieBurn> burns = new ArrayList<CalorieBurn>( );
+		String[] levels = { "sedentary", "lightly", "very", "sedentary", "unlisted", null };
+		for ( int i = 0; i < levels.length; i++ ) {
+			CalorieBurn cb = new CalorieBurn( );
+			cb.setInterval( interval( i * 5, 5 ) );
+			cb.setValue( 10 + i );
+			cb.setActivityLevel( levels[ i ] );
+			burns.add( cb );
+		}
+
+		new IntradayStore( this.directory ).putCaloriesBurned( USER_ID, DATE, burns );
+
+		List<CalorieBurn> stored = new IntradayStore( this.directory ).getCaloriesBurned( USER_ID, DATE );
+		assertEquals( burns.size( ), stored.size( ) );
+		for ( int i = 0; i < burns.size( ); i++ ) {
+			assertEquals( burns.get( i ).getInterval( ), stored.get( i ).getInterval( ) );
+			assertEquals( burns.get( i ).getValue( ), stored.get( i ).getValue( ) );
+			assertEquals( burns.get( i ).getActivityLevel( ), stored.get( i ).getActivityLevel( ) );
+			assertEquals( burns.get( i ).getLevel( ), stored.get( i ).getLevel( ) );
+		}
+	}
+
+	public void testFloorCountRoundTrip( ) {
+
+		List<FloorCount> floors = new ArrayList<FloorCount>( );
+		for ( int i = 0; i < 288; i++ ) {
+			FloorCount fc = new FloorCount( );
+			fc.setInterval( interval( i * 5, 5 ) );
+			fc.setValue( i % 3 );
+			floors.add( fc );
+		}
+
+		new IntradayStore( this.directory ).putFloorCount( USER_ID, DATE, floors );
+
+		assertValues( floors, new IntradayStore( this.directory ).getFloorCount( USER_ID, DATE ) );
+	}
+
+	public void testSleepSessionsRoundTrip( ) {
+
+		List<SleepSession> sessions = Arrays.asList( session( 0, 1, 1, 2, 1 ), session( 600, 3, 1 ) );
+		new IntradayStore( this.directory ).putSleepSessions( USER_ID, DATE, sessions );
+
+		List<SleepSession> stored = new IntradayStore( this.directory ).getSleepSessions( USER_ID, DATE );
+		assertEquals( sessions.size( ), stored.size( ) );
+		for ( int s = 0; s < sessions.size( ); s++ ) {
+			assertValues( sessions.get( s ).getSleepLevels( ), stored.get( s ).getSleepLevels( ) );
+			assertEquals( sessions.get( s ).getInterval( ), stored.get( s ).getInterval( ) );
+		}
+	}
+
+	public void testStepCountRoundTrip( ) {
+
+		List<StepCount> steps = steps( 0 );
+		new IntradayStore( this.directory ).putStepCount( USER_ID, DATE, steps );
+
+		assertValues( steps, new IntradayStore( this.directory ).getStepCount( USER_ID, DATE ) );
+	}
+
+	public void testWeightsRoundTrip( ) {
+
+		List<Weight> weights = new ArrayList<Weight>( );
+		float[] values = { 71.3f, 71.05f };
+		for ( int i = 0; i < values.length; i++ ) {
+			Weight w = new Weight( );
+			w.setDateTime( DATE.toDateTimeAtStartOfDay( ).plusHours( 7 + i * 12 ) );
+			w.setValue( values[ i ] );
+			weights.add( w );
+		}
+
+		new IntradayStore( this.directory ).putWeights( USER_ID, DATE, weights );
+
+		List<Weight> stored = new IntradayStore( this.directory ).getWeights( USER_ID, DATE );
+		assertEquals( weights.size( ), stored.size( ) );
+		for ( int i = 0; i < weights.size( ); i++ ) {
+			assertEquals( weights.get( i ).getDateTime( ).getMillis( ), stored.get( i ).getDateTime( ).getMillis( ) );
+			assertEquals( weights.get( i ).getValue( ), stored.get( i ).getValue( ), 0f );
+		}
+	}
+
+	public void testManyDaysAcrossRestart( ) {
+
+		IntradayStore store = new IntradayStore( this.directory );
+		for ( int day = 0; day < 60; day++ )
+			store.putStepCount( USER_ID, DATE.plusDays( day ), steps( day ) );
+
+		IntradayStore reopened = new IntradayStore( this.directory );
+		for ( int day = 0; day < 60; day++ ) {
+			assertValues( steps( day ), store.getStepCount( USER_ID, DATE.plusDays( day ) ) );
+			assertValues( steps( day ), reopened.getStepCount( USER_ID, DATE.plusDays( day ) ) );
+		}
+	}
+
+	public void testOverwriteReplacesDay( ) {
+
+		IntradayStore store = new IntradayStore( this.directory );
+		store.putStepCount( USER_ID, DATE, steps( 0 ) );
+		store.putStepCount( USER_ID, DATE.plusDays( 1 ), steps( 1 ) );
+		store.putStepCount( USER_ID, DATE, steps( 2 ) );
+
+		assertValues( steps( 2 ), store.getStepCount( USER_ID, DATE ) );
+		assertValues( steps( 2 ), new IntradayStore( this.directory ).getStepCount( USER_ID, DATE ) );
+		assertValues( steps( 1 ), new IntradayStore( this.directory ).getStepCount( USER_ID, DATE.plusDays( 1 ) ) );
+	}
+
+	public void testContainsAndAbsentDays( ) {
+
+		IntradayStore store = new IntradayStore( this.directory );
+		assertFalse( store.contains( USER_ID, Series.STEPS, DATE ) );
+		assertNull( store.getStepCount( USER_ID, DATE ) );
+
+		store.putStepCount( USER_ID, DATE, steps( 0 ) );
+		assertTrue( store.contains( USER_ID, Series.STEPS, DATE ) );
+		assertTrue( new IntradayStore( this.directory ).contains( USER_ID, Series.STEPS, DATE ) );
+		assertFalse( store.contains( USER_ID, Series.STEPS, DATE.plusDays( 1 ) ) );
+		assertFalse( store.contains( USER_ID, Series.FLOORS, DATE ) );
+		assertFalse( store.contains( "OTHER1", Series.STEPS, DATE ) );
+		assertNull( store.getFloorCount( USER_ID, DATE ) );
+	}
+
+	public void testEvictedFilesReopen( ) {
+
+		IntradayStore store = new IntradayStore( this.directory, 1 );
+		store.putStepCount( USER_ID, DATE, steps( 0 ) );
+		store.putStepCount( "OTHER1", DATE, steps( 1 ) );
+		store.putStepCount( USER_ID, DATE.plusDays( 1 ), steps( 2 ) );
+
+		assertValues( steps( 0 ), store.getStepCount( USER_ID, DATE ) );
+		assertValues( steps( 1 ), store.getStepCount( "OTHER1", DATE ) );
+		assertValues( steps( 2 ), store.getStepCount( USER_ID, DATE.plusDays( 1 ) ) );
+	}
+
+	public void testReadersNeverSeeAnotherDay( ) throws InterruptedException {
+
+		final IntradayStore store = new IntradayStore( this.directory, DEFAULT_OPEN_FILES, false );
+		final LocalDate polled = DATE.plusDays( 200 );
+		store.putStepCount( USER_ID, polled, steps( 200 ) );
+
+		final boolean[] done = new boolean[ 1 ];
+		final int[] wrong = new int[ 1 ];
+		Thread reader = new Thread( ) {
+			@Override
+			public void run( ) {
+				List<StepCount> expected = steps( 200 );
+				while ( !isDone( ) ) {
+					List<StepCount> read = store.getStepCount( USER_ID, polled );
+					if ( read.get( 1 ).getValue( ).intValue( ) != expected.get( 1 ).getValue( ).intValue( ) )
+						wrong[ 0 ]++;
+				}
+			}
+
+			private boolean isDone( ) {
+				synchronized ( done ) {
+					return done[ 0 ];
+				}
+			}
+		};
+		reader.start( );
+
+		//days earlier than the polled day shift its position in the index as they're inserted
+		for ( int day = 199; day >= 0; day-- )
+			store.putStepCount( USER_ID, DATE.plusDays( day ), steps( day ) );
+
+		synchronized ( done ) {
+			done[ 0 ] = true;
+		}
+		reader.join( );
+
+		assertEquals( 0, wrong[ 0 ] );
+		for ( int day = 0; day <= 200; day++ )
+			assertValues( steps( day ), store.getStepCount( USER_ID, DATE.plusDays( day ) ) );
+	}
+
+	public void testConcurrentWritersToOneFile( ) throws InterruptedException {
+
+		final IntradayStore store = new IntradayStore( this.directory, DEFAULT_OPEN_FILES, false );
+		Thread[] writers = new Thread[ 4 ];
+		for ( int w = 0; w < writers.length; w++ ) {
+			final int first = w;
+			writers[ w ] = new Thread( ) {
+				@Override
+				public void run( ) {
+					for ( int day = first; day < 100; day += 4 )
+						store.putStepCount( USER_ID, DATE.plusDays( day ), steps( day ) );
+				}
+			};
+			writers[ w ].start( );
+		}
+		for ( Thread writer : writers )
+			writer.join( );
+		store.flush( );
+
+		IntradayStore reopened = new IntradayStore( this.directory );
+		for ( int day = 0; day < 100; day++ )
+			assertValues( steps( day ), reopened.getStepCount( USER_ID, DATE.plusDays( day ) ) );
+	}
+
+	public void testUnsyncedPutsSurviveOnlyOnceFlushed( ) {
+
+		IntradayStore store = new IntradayStore( this.directory, DEFAULT_OPEN_FILES, false );
+		store.putStepCount( USER_ID, DATE, steps( 0 ) );
+		assertValues( steps( 0 ), store.getStepCount( USER_ID, DATE ) );
+		assertFalse( new IntradayStore( this.directory ).contains( USER_ID, Series.STEPS, DATE ) );
+
+		store.flush( );
+		assertValues( steps( 0 ), new IntradayStore( this.directory ).getStepCount( USER_ID, DATE ) );
+	}
+
+	public void testEvictionFlushesUnsyncedPuts( ) {
+
+		IntradayStore store = new IntradayStore( this.directory, 1, false );
+		store.putStepCount( USER_ID, DATE, steps( 0 ) );
+		store.putStepCount( "OTHER1", DATE, steps( 1 ) );
+
+		assertValues( steps( 0 ), new IntradayStore( this.directory ).getStepCount( USER_ID, DATE ) );
+	}
+
+	public void testFileGrowsAcrossMappings( ) {
+
+		//each step day is several KB, so a year outgrows the initial mapping several times
+		IntradayStore store = new IntradayStore( this.directory );
+		for ( int day = 0; day < 365; day++ )
+			store.putStepCount( USER_ID, DATE.plusDays( day ), steps( day ) );
+
+		for ( int day = 0; day < 365; day++ )
+			assertValues( steps( day ), store.getStepCount( USER_ID, DATE.plusDays( day ) ) );
+		assertValues( steps( 364 ), new IntradayStore( this.directory ).getStepCount( USER_ID, DATE.plusDays( 364 ) ) );
+	}
+
+	private static void assertValues( List<? extends ActivityValue<Integer>> expected, List<? extends ActivityValue<Integer>> actual ) {
+		assertNotNull( actual );
+		assertEquals( expected.size( ), actual.size( ) );
+		for ( int i = 0; i < expected.size( ); i++ ) {
+			assertEquals( expected.get( i ).getInterval( ), actual.get( i ).getInterval( ) );
+			assertEquals( expected.get( i ).getValue( ), actual.get( i ).getValue( ) );
+		}
+	}
+
+	private static void delete( File file ) {
+		File[] children = file.listFiles( );
+		if ( children != null )
+			for ( File child : children )
+				delete( child );
+		file.delete( );
+	}
+
+	private static Interval interval( int startMinute, int minutes ) {
+		DateTime start = DATE.toDateTimeAtStartOfDay( ).plusMinutes( startMinute );
+		return new Interval( start, start.plusMinutes( minutes ).minusSeconds( 1 ) );
+	}
+
+	private static SleepSession session( int startMinute, int... values ) {
+
+		List<SleepLevel> levels = new ArrayList<SleepLevel>( );
+		for ( int i = 0; i < values.length; i++ ) {
+			SleepLevel sl = new SleepLevel( );
+			sl.setInterval( interval( startMinute + i, 1 ) );
+			sl.setValue( values[ i ] );
+			levels.add( sl );
+		}
+
+		SleepSession session = new SleepSession( );
+		session.setSleepLevels( levels );
+		session.setInterval( new Interval( levels.get( 0 ).getInterval( ).getStart( ), levels.get( levels.size( ) - 1 ).getInterval( ).getEnd( ) ) );
+		return session;
+	}
+
+	private static List<StepCount> steps( int seed ) {
+		List<StepCount> steps = new ArrayList<StepCount>( );
+		for ( int i = 0; i < 288; i++ ) {
+			StepCount sc = new StepCount( );
+			sc.setInterval( interval( i * 5, 5 ) );
+			sc.setValue( i * 31 + seed * 7 );
+			steps.add( sc );
+		}
+		return steps;
+	}
+}
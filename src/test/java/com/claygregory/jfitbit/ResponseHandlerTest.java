@@ -0,0 +1,133 @@
+package com.claygregory.jfitbit;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
+import com.google.gson.JsonObject;
+
+public class ResponseHandlerTest extends TestCase {
+
+	private static final String ACTIVITY_RESPONSE =
+		"{\"graph\":{\"title\":\"Calories\",\"settings\":{\"zoom\":[1,2]},\"dataSets\":{"
+			+ "\"summary\":{\"dataPoints\":[{\"dateTime\":\"2016-3-14 00:00:00\",\"value\":999}]},"
+			+ "\"activity\":{\"type\":\"column\",\"dataPoints\":["
+				+ "{\"dateTime\":\"2016-3-14 00:00:00\",\"value\":12.7,\"activityLevel\":\"sedentary\",\"description\":{\"a\":[1,{}]}},"
+				+ "{\"value\":\"3\",\"dateTime\":\"2016-3-14 00:05:00\",\"activityLevel\":null},"
+				+ "{\"dateTime\":\"2016-3-14 00:10:00\",\"value\":40,\"activityLevel\":\"very\"}"
+			+ "]}}},\"trailing\":[1,2,3]}";
+
+	private static final String WEIGHT_RESPONSE =
+		"{\"graph\":{\"dataSets\":{\"weight\":{\"dataPoints\":["
+			+ "{\"dateTime\":\"2016-3-14 07:00:00\",\"value\":71.3,\"description\":\"morning\"},"
+			+ "{\"dateTime\":\"2016-3-15 07:30:00\",\"value\":\"71.05\"}"
+		+ "]}}}}";
+
+	private static class RecordingHandler extends Fitbit.ActivityResponseHandler {
+
+		private final List<Interval> intervals = new ArrayList<Interval>( );
+
+		private final List<String> levels = new ArrayList<String>( );
+
+		private final List<Double> values = new ArrayList<Double>( );
+
+		@Override
+		protected void processDataPoint( Interval interval, double value, String activityLevel ) {
+			this.intervals.add( interval );
+			this.values.add( value );
+			this.levels.add( activityLevel );
+		}
+	}
+
+	public void testActivityDataPointsStreamed( ) throws IOException {
+
+		RecordingHandler handler = new RecordingHandler( );
+		handler.processResponse( new StringReader( ACTIVITY_RESPONSE ) );
+
+		assertEquals( 3, handler.intervals.size( ) );
+		DateTime start = new DateTime( 2016, 3, 14, 0, 0 );
+		for ( int i = 0; i < 3; i++ )
+			assertEquals( new Interval( start.plusMinutes( 5 * i ), start.plusMinutes( 5 * i + 5 ).minusSeconds( 1 ) ), handler.intervals.get( i ) );
+
+		assertEquals( 12.7, handler.values.get( 0 ), 0 );
+		assertEquals( 3.0, handler.values.get( 1 ), 0 );
+		assertEquals( 40.0, handler.values.get( 2 ), 0 );
+
+		assertEquals( "sedentary", handler.levels.get( 0 ) );
+		assertNull( handler.levels.get( 1 ) );
+		assertEquals( "very", handler.levels.get( 2 ) );
+	}
+
+	public void testActivityIntervalsShared( ) throws IOException {
+
+		RecordingHandler first = new RecordingHandler( );
+		first.processResponse( new StringReader( ACTIVITY_RESPONSE ) );
+		RecordingHandler second = new RecordingHandler( );
+		second.processResponse( new StringReader( ACTIVITY_RESPONSE ) );
+
+		for ( int i = 0; i < first.intervals.size( ); i++ )
+			assertSame( first.intervals.get( i ), second.intervals.get( i ) );
+	}
+
+	@SuppressWarnings( "deprecation" )
+	public void testLegacyHandlerReceivesDataPoints( ) throws IOException {
+
+		final List<JsonObject> dataPoints = new ArrayList<JsonObject>( );
+		Fitbit.ActivityResponseHandler handler = new Fitbit.ActivityResponseHandler( ) {
+			@Override
+			protected void processDataPoint( Interval interval, JsonObject dataPoint ) {
+				dataPoints.add( dataPoint );
+			}
+		};
+		handler.processResponse( new StringReader( ACTIVITY_RESPONSE ) );
+
+		assertEquals( 3, dataPoints.size( ) );
+		assertEquals( 12, dataPoints.get( 0 ).get( "value" ).getAsInt( ) );
+		assertEquals( "sedentary", dataPoints.get( 0 ).get( "activityLevel" ).getAsString( ) );
+		assertEquals( "2016-3-14 00:05:00", dataPoints.get( 1 ).get( "dateTime" ).getAsString( ) );
+		assertNull( dataPoints.get( 1 ).get( "activityLevel" ) );
+	}
+
+	public void testEmptyDataPoints( ) throws IOException {
+		RecordingHandler handler = new RecordingHandler( );
+		handler.processResponse( new StringReader( "{\"graph\":{\"dataSets\":{\"activity\":{\"dataPoints\":[]}}}}" ) );
+		assertTrue( handler.intervals.isEmpty( ) );
+	}
+
+	public void testMissingDataSetRejected( ) {
+		try {
+			new RecordingHandler( ).processResponse( new StringReader( "{\"graph\":{\"dataSets\":{\"weight\":{\"dataPoints\":[]}}}}" ) );
+			fail( );
+		} catch( IOException e ) {
+			//expected
+		}
+	}
+
+	public void testMissingDateTimeRejected( ) {
+		try {
+			new RecordingHandler( ).processResponse( new StringReader( "{\"graph\":{\"dataSets\":{\"activity\":{\"dataPoints\":[{\"value\":1}]}}}}" ) );
+			fail( );
+		} catch( IOException e ) {
+			//expected
+		}
+	}
+
+	public void testWeightDataPointsStreamed( ) throws IOException {
+
+		Fitbit.WeightResponseHandler handler = new Fitbit.WeightResponseHandler( );
+		handler.processResponse( new StringReader( WEIGHT_RESPONSE ) );
+
+		List<Weight> weights = handler.getWeights( );
+		assertEquals( 2, weights.size( ) );
+		assertEquals( new DateTime( 2016, 3, 14, 7, 0 ), weights.get( 0 ).getDateTime( ) );
+		assertEquals( 71.3f, weights.get( 0 ).getValue( ), 0f );
+		assertEquals( new DateTime( 2016, 3, 15, 7, 30 ), weights.get( 1 ).getDateTime( ) );
+		assertEquals( 71.05f, weights.get( 1 ).getValue( ), 0f );
+	}
+}
@@ -0,0 +1,121 @@
+package com.claygregory.jfitbit;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+
+public class ResponseStreamsTest extends TestCase {
+
+	private static final Pattern SLEEP_RECORD_PATTERN = Pattern.compile( "sleepRecord\\.([0-9]+)" );
+
+	/**
+	 * Returns at most a few bytes per read, splitting content at arbitrary points
+	 */
+	private static class TrickleInputStream extends InputStream {
+
+		private final InputStream in;
+
+		private final int maxRead;
+
+		private TrickleInputStream( byte[] content, int maxRead ) {
+			this.in = new ByteArrayInputStream( content );
+			this.maxRead = maxRead;
+		}
+
+		@Override
+		public int read( ) throws IOException {
+			return this.in.read( );
+		}
+
+		@Override
+		public int read( byte[] b, int off, int len ) throws IOException {
+			return this.in.read( b, off, Math.min( len, this.maxRead ) );
+		}
+	}
+
+	private static HttpEntity entity( String content, int maxRead ) {
+		byte[] bytes = content.getBytes( Charset.forName( "UTF-8" ) );
+		return new InputStreamEntity( new TrickleInputStream( bytes, maxRead ), bytes.length, ContentType.create( "text/html", "UTF-8" ) );
+	}
+
+	public void testContainsAcrossReads( ) throws IOException {
+		for ( int maxRead = 1; maxRead <= 12; maxRead++ ) {
+			assertTrue( ResponseStreams.contains( entity( "{\"status\":\"Succeeded\"}", maxRead ), "Succeeded" ) );
+			assertFalse( ResponseStreams.contains( entity( "{\"status\":\"Succeed\"}", maxRead ), "Succeeded" ) );
+		}
+	}
+
+	public void testFindMatchSplitAcrossReads( ) throws IOException {
+		String content = "<a href=\"/user/2ABC9X/profile\">";
+		for ( int maxRead = 1; maxRead <= content.length( ); maxRead++ )
+			assertEquals( "2ABC9X", ResponseStreams.find( entity( content, maxRead ), Pattern.compile( "./user/([A-Z0-9]+)" ), 64 ) );
+	}
+
+	public void testFindMatchTouchingEndOfStream( ) throws IOException {
+		for ( int maxRead = 1; maxRead <= 8; maxRead++ ) {
+			List<String> ids = ResponseStreams.findAll( entity( "x sleepRecord.12345", maxRead ), SLEEP_RECORD_PATTERN, 64 );
+			assertEquals( Arrays.asList( "12345" ), ids );
+		}
+	}
+
+	public void testFindAllConsecutiveMatches( ) throws IOException {
+		for ( int maxRead = 1; maxRead <= 16; maxRead++ ) {
+			List<String> ids = ResponseStreams.findAll( entity( "sleepRecord.1sleepRecord.22 sleepRecord.333", maxRead ), SLEEP_RECORD_PATTERN, 64 );
+			assertEquals( Arrays.asList( "1", "22", "333" ), ids );
+		}
+	}
+
+	public void testFindAllOverlappingCandidates( ) throws IOException {
+		for ( int maxRead = 1; maxRead <= 16; maxRead++ ) {
+			List<String> ids = ResponseStreams.findAll( entity( "sleepRecord.sleepRecord.42", maxRead ), SLEEP_RECORD_PATTERN, 64 );
+			assertEquals( Arrays.asList( "42" ), ids );
+		}
+	}
+
+	public void testFindAllAcrossLargeBody( ) throws IOException {
+
+		StringBuilder content = new StringBuilder( );
+		for ( int i = 0; i < 2000; i++ )
+			content.append( "<div class=\"filler\">" ).append( i ).append( "</div>" ).append( "sleepRecord." ).append( i ).append( '\n' );
+
+		List<String> ids = ResponseStreams.findAll( entity( content.toString( ), 1000 ), SLEEP_RECORD_PATTERN, 64 );
+		assertEquals( 2000, ids.size( ) );
+		for ( int i = 0; i < ids.size( ); i++ )
+			assertEquals( String.valueOf( i ), ids.get( i ) );
+	}
+
+	public void testFindNoMatch( ) throws IOException {
+		assertNull( ResponseStreams.find( entity( "no records here", 3 ), SLEEP_RECORD_PATTERN, 64 ) );
+		assertTrue( ResponseStreams.findAll( entity( "", 3 ), SLEEP_RECORD_PATTERN, 64 ).isEmpty( ) );
+	}
+
+	public void testReaderDecodesMultiByteCharactersAcrossReads( ) throws IOException {
+
+		String content = "café € 😀 end";
+		for ( int maxRead = 1; maxRead <= 4; maxRead++ ) {
+
+			StringBuilder decoded = new StringBuilder( );
+			Reader reader = ResponseStreams.reader( entity( content, maxRead ) );
+			try {
+				char[] buffer = new char[ 1 ];
+				int read;
+				while ( ( read = reader.read( buffer ) ) != -1 )
+					decoded.append( buffer, 0, read );
+			} finally {
+				reader.close( );
+			}
+			assertEquals( content, decoded.toString( ) );
+		}
+	}
+}
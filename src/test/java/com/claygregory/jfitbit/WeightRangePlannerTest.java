@@ -0,0 +1,131 @@
+package com.claygregory.jfitbit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+public class WeightRangePlannerTest extends TestCase {
+
+	private WeightRangePlanner planner;
+
+	@Override
+	protected void setUp( ) {
+		this.planner = new WeightRangePlanner( 2 );
+	}
+
+	@Override
+	protected void tearDown( ) {
+		this.planner.shutdown( );
+	}
+
+	public void testPlanGroupsMonthsIntoChunks( ) {
+
+		List<WeightRangePlanner.Chunk> chunks = this.plan( new LocalDate( 2016, 1, 1 ), new LocalDate( 2016, 12, 31 ) );
+
+		assertEquals( 4, chunks.size( ) );
+		assertChunk( chunks.get( 0 ), new LocalDate( 2016, 1, 1 ), new LocalDate( 2016, 3, 31 ) );
+		assertChunk( chunks.get( 1 ), new LocalDate( 2016, 4, 1 ), new LocalDate( 2016, 6, 30 ) );
+		assertChunk( chunks.get( 2 ), new LocalDate( 2016, 7, 1 ), new LocalDate( 2016, 9, 30 ) );
+		assertChunk( chunks.get( 3 ), new LocalDate( 2016, 10, 1 ), new LocalDate( 2016, 12, 31 ) );
+	}
+
+	public void testPlanKeepsPartialMonthBounds( ) {
+
+		List<WeightRangePlanner.Chunk> chunks = this.plan( new LocalDate( 2016, 1, 15 ), new LocalDate( 2016, 2, 10 ) );
+		assertEquals( 1, chunks.size( ) );
+		assertChunk( chunks.get( 0 ), new LocalDate( 2016, 1, 15 ), new LocalDate( 2016, 2, 10 ) );
+
+		chunks = this.plan( new LocalDate( 2016, 1, 10 ), new LocalDate( 2016, 1, 10 ) );
+		assertEquals( 1, chunks.size( ) );
+		assertChunk( chunks.get( 0 ), new LocalDate( 2016, 1, 10 ), new LocalDate( 2016, 1, 10 ) );
+	}
+
+	public void testPlanFollowsObservedCost( ) {
+
+		//cheap, sparse responses allow long chunks
+		this.planner.observe( 100, 1000, 100 );
+		assertEquals( 500, this.planner.getChunkDays( ) );
+		assertEquals( 1, this.plan( new LocalDate( 2015, 1, 1 ), new LocalDate( 2016, 3, 31 ) ).size( ) );
+	}
+
+	public void testObserveIgnoresEmptyRange( ) {
+
+		this.planner.observe( 0, 1000, 0 );
+		assertEquals( WeightRangePlanner.DEFAULT_CHUNK_DAYS, this.planner.getChunkDays( ) );
+
+		this.planner.observe( 100, 1000, 100 );
+		this.planner.observe( 0, 1000, 0 );
+		this.planner.observe( -1, 1000, 0 );
+		assertEquals( 500, this.planner.getChunkDays( ) );
+	}
+
+	public void testObserveClampsChunkDays( ) {
+
+		this.planner.observe( 10, 100000, 10 );
+		assertEquals( WeightRangePlanner.MIN_CHUNK_DAYS, this.planner.getChunkDays( ) );
+
+		WeightRangePlanner fast = new WeightRangePlanner( 1 );
+		try {
+			fast.observe( 100, 1, 0 );
+			assertEquals( WeightRangePlanner.MAX_CHUNK_DAYS, fast.getChunkDays( ) );
+		} finally {
+			fast.shutdown( );
+		}
+	}
+
+	public void testObserveSmooths( ) {
+		this.planner.observe( 100, 1000, 0 );
+		this.planner.observe( 100, 2000, 0 );
+		//10 ms/day moved 30% of the way to 20 ms/day
+		assertEquals( 384, this.planner.getChunkDays( ) );
+	}
+
+	public void testReversedRangeIsEmpty( ) {
+		assertTrue( this.planner.getWeights( null, new LocalDate( 2016, 1, 11 ), new LocalDate( 2016, 1, 10 ) ).isEmpty( ) );
+		assertEquals( WeightRangePlanner.DEFAULT_CHUNK_DAYS, this.planner.getChunkDays( ) );
+	}
+
+	public void testMergeSortsAndDropsDuplicates( ) {
+
+		DateTime t = new DateTime( 2016, 1, 1, 7, 0 );
+		List<Weight> merged = WeightRangePlanner.merge( new ArrayList<Weight>( Arrays.asList(
+			weight( t.plusDays( 1 ), 71 ),
+			weight( t, 70 ),
+			weight( t.plusDays( 1 ), 71 ),
+			weight( t, 70.5f )
+		) ) );
+
+		assertEquals( 3, merged.size( ) );
+		assertEquals( t, merged.get( 0 ).getDateTime( ) );
+		assertEquals( t, merged.get( 1 ).getDateTime( ) );
+		assertEquals( 140.5f, merged.get( 0 ).getValue( ) + merged.get( 1 ).getValue( ), 0f );
+		assertEquals( t.plusDays( 1 ), merged.get( 2 ).getDateTime( ) );
+	}
+
+	public void testMergeEmpty( ) {
+		assertTrue( WeightRangePlanner.merge( new ArrayList<Weight>( ) ).isEmpty( ) );
+	}
+
+	private static void assertChunk( WeightRangePlanner.Chunk chunk, LocalDate from, LocalDate to ) {
+		assertEquals( from, chunk.getFrom( ) );
+		assertEquals( to, chunk.getTo( ) );
+	}
+
+	private List<WeightRangePlanner.Chunk> plan( LocalDate from, LocalDate to ) {
+		List<WeightRangePlanner.Chunk> chunks = new ArrayList<WeightRangePlanner.Chunk>( );
+		this.planner.plan( "2ABC9X", from, to, new ArrayList<Weight>( ), chunks );
+		return chunks;
+	}
+
+	private static Weight weight( DateTime dateTime, float value ) {
+		Weight w = new Weight( );
+		w.setDateTime( dateTime );
+		w.setValue( value );
+		return w;
+	}
+}